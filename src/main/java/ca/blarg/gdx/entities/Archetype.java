@@ -0,0 +1,159 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.IntMap;
+
+/**
+ * Storage for all entities which have exactly the same set of component types. Entities and each of their
+ * component types are kept in parallel contiguous arrays, so that code wanting to process all entities having
+ * some set of components can walk through each matching Archetype linearly.
+ */
+public final class Archetype {
+	static final int INITIAL_CAPACITY = 16;
+
+	public final EntityManager entityManager;
+
+	final int[] types;          // sorted component type ids
+	final Bits mask;            // component type ids as a bitmask, used for quick set comparisons
+	final int[] columnIndices;  // component type id -> index into columns, or -1
+	final Component[][] columns;
+	Entity[] entities;
+	int size;
+
+	// cached archetype "edges" so that adding/removing a component type doesn't need to look up the destination
+	final IntMap<Archetype> addTransitions;
+	final IntMap<Archetype> removeTransitions;
+
+	final Array<EntityQuery> queries;   // all queries this archetype's entities belong to
+
+	Archetype(EntityManager entityManager, int[] types) {
+		this.entityManager = entityManager;
+		this.types = types;
+		mask = toMask(types);
+
+		int maxType = -1;
+		for (int i = 0; i < types.length; ++i)
+			maxType = Math.max(maxType, types[i]);
+
+		columnIndices = new int[maxType + 1];
+		for (int i = 0; i < columnIndices.length; ++i)
+			columnIndices[i] = -1;
+
+		columns = new Component[types.length][];
+		for (int i = 0; i < types.length; ++i) {
+			columnIndices[types[i]] = i;
+			columns[i] = new Component[INITIAL_CAPACITY];
+		}
+
+		entities = new Entity[INITIAL_CAPACITY];
+		addTransitions = new IntMap<Archetype>();
+		removeTransitions = new IntMap<Archetype>();
+		queries = new Array<EntityQuery>(false, 4, EntityQuery.class);
+	}
+
+	/*** public chunk access ***/
+
+	public int size() {
+		return size;
+	}
+
+	public Entity getEntity(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("row out of bounds: " + row);
+
+		return entities[row];
+	}
+
+	public <T extends Component> boolean has(Class<T> componentType) {
+		ComponentType type = entityManager.getComponentType(componentType, false);
+		if (type == null)
+			return false;
+		else
+			return getColumnIndex(type.id) != -1;
+	}
+
+	/**
+	 * Returns the backing array of components of the given type for this archetype, or null if entities in this
+	 * archetype do not have that component. Only indices 0 to size()-1 are valid, and index i belongs to the
+	 * entity returned by getEntity(i). The returned array should not be held on to past any add/remove calls.
+	 */
+	public <T extends Component> Component[] getComponents(Class<T> componentType) {
+		ComponentType type = entityManager.getComponentType(componentType, false);
+		if (type == null)
+			return null;
+
+		int column = getColumnIndex(type.id);
+		if (column == -1)
+			return null;
+		else
+			return columns[column];
+	}
+
+	/*** package-private storage management ***/
+
+	static Bits toMask(int[] types) {
+		Bits mask = new Bits();
+		for (int i = 0; i < types.length; ++i)
+			mask.set(types[i]);
+		return mask;
+	}
+
+	int getColumnIndex(int typeId) {
+		if (typeId >= columnIndices.length)
+			return -1;
+		else
+			return columnIndices[typeId];
+	}
+
+	boolean hasType(int typeId) {
+		return getColumnIndex(typeId) != -1;
+	}
+
+	int add(Entity entity) {
+		ensureCapacity(size + 1);
+
+		int row = size;
+		entities[row] = entity;
+		entity.archetype = this;
+		entity.row = row;
+		++size;
+
+		return row;
+	}
+
+	// removes the given row by swapping the last row into its place. components in the removed row are NOT freed
+	void removeRow(int row) {
+		int last = size - 1;
+		if (row != last) {
+			Entity moved = entities[last];
+			entities[row] = moved;
+			moved.row = row;
+			for (int i = 0; i < columns.length; ++i)
+				columns[i][row] = columns[i][last];
+		}
+
+		entities[last] = null;
+		for (int i = 0; i < columns.length; ++i)
+			columns[i][last] = null;
+
+		--size;
+	}
+
+	void ensureCapacity(int capacity) {
+		if (capacity <= entities.length)
+			return;
+
+		int newCapacity = Math.max(capacity, (int)(entities.length * 1.75f));
+
+		Entity[] newEntities = new Entity[newCapacity];
+		System.arraycopy(entities, 0, newEntities, 0, size);
+		entities = newEntities;
+
+		for (int i = 0; i < columns.length; ++i) {
+			Component[] newColumn = new Component[newCapacity];
+			System.arraycopy(columns[i], 0, newColumn, 0, size);
+			columns[i] = newColumn;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.ReflectionUtils;
+import com.badlogic.gdx.utils.Array;
+
+// a pool of a single type of component, owned by an EntityManager. all access to the pool itself goes through the
+// EntityManager (which handles locking), the getters here are just for tuning/monitoring
+
+public final class ComponentPool<T extends Component> {
+	public final Class<T> type;
+
+	final Array<T> freeObjects;
+	int max;
+	int peakFree;
+	long numObtained;
+	long numFreed;
+	long numMisses;
+	long numDiscarded;
+
+	ComponentPool(Class<T> type, int max) {
+		this.type = type;
+		this.max = max;
+		freeObjects = new Array<T>(false, 16);
+	}
+
+	/*** stats ***/
+
+	public int getMax() {
+		return max;
+	}
+
+	public int getNumFree() {
+		return freeObjects.size;
+	}
+
+	public int getPeakFree() {
+		return peakFree;
+	}
+
+	public long getNumObtained() {
+		return numObtained;
+	}
+
+	public long getNumFreed() {
+		return numFreed;
+	}
+
+	// number of obtains which had to allocate a new component because the pool was empty
+	public long getNumMisses() {
+		return numMisses;
+	}
+
+	// number of frees which let the component be garbage collected because the pool was already full
+	public long getNumDiscarded() {
+		return numDiscarded;
+	}
+
+	/*** package-private pool management ***/
+
+	T obtain() {
+		++numObtained;
+		if (freeObjects.size == 0) {
+			++numMisses;
+			return newObject();
+		} else
+			return freeObjects.pop();
+	}
+
+	void free(T component) {
+		++numFreed;
+		component.reset();
+		if (freeObjects.size < max) {
+			freeObjects.add(component);
+			peakFree = Math.max(peakFree, freeObjects.size);
+		} else
+			++numDiscarded;
+	}
+
+	void prewarm(int count) {
+		// asking for more than max means the pool needs to be bigger, otherwise they'd just be discarded again
+		if (count > max)
+			max = count;
+		freeObjects.ensureCapacity(count - freeObjects.size);
+		while (freeObjects.size < count)
+			freeObjects.add(newObject());
+		peakFree = Math.max(peakFree, freeObjects.size);
+	}
+
+	void setMax(int max) {
+		this.max = max;
+		if (freeObjects.size > max)
+			freeObjects.truncate(max);
+	}
+
+	void resetStats() {
+		peakFree = freeObjects.size;
+		numObtained = 0;
+		numFreed = 0;
+		numMisses = 0;
+		numDiscarded = 0;
+	}
+
+	void clear() {
+		freeObjects.clear();
+	}
+
+	private T newObject() {
+		try {
+			return ReflectionUtils.instantiateObject(type, new Class<?>[] { }, new Object[] { });
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Could not instantiate this type of Component.", e);
+		}
+	}
+}
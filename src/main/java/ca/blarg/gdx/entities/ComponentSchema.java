@@ -0,0 +1,377 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Comparator;
+
+// the list of serializable fields of a component type, worked out once per type and then cached. each field gets
+// a "kind" which decides how it is written/read, so that no reflective type inspection is needed per field access.
+// static and transient fields are skipped, any other field of an unsupported type is an error
+
+final class ComponentSchema {
+	static final byte BOOLEAN = 0;
+	static final byte BYTE = 1;
+	static final byte SHORT = 2;
+	static final byte CHAR = 3;
+	static final byte INT = 4;
+	static final byte LONG = 5;
+	static final byte FLOAT = 6;
+	static final byte DOUBLE = 7;
+	static final byte STRING = 8;
+	static final byte ENUM = 9;
+	static final byte CLASS = 10;
+	static final byte ENTITY = 11;
+	static final byte VECTOR2 = 12;
+	static final byte VECTOR3 = 13;
+	static final byte QUATERNION = 14;
+	static final byte COLOR = 15;
+
+	static final ObjectMap<Class<? extends Component>, ComponentSchema> schemas = new ObjectMap<Class<? extends Component>, ComponentSchema>();
+	static final ObjectMap<String, Class<?>> classes = new ObjectMap<String, Class<?>>();
+
+	final Class<? extends Component> type;
+	final Field[] fields;
+	final String[] names;
+	final byte[] kinds;
+	final Object[][] enumConstants;
+	final Class<?>[] classBounds;   // for CLASS fields, X for a Class<? extends X> field (Object if not bounded)
+
+	static ComponentSchema get(Class<? extends Component> type) {
+		synchronized (schemas) {
+			ComponentSchema schema = schemas.get(type);
+			if (schema == null) {
+				schema = new ComponentSchema(type);
+				schemas.put(type, schema);
+			}
+			return schema;
+		}
+	}
+
+	// names come from snapshot data, so classes are looked up without being initialized, and have to be a subclass
+	// of base before they're used for anything
+	static Class<?> getClassByName(String name, Class<?> base) throws IOException {
+		Class<?> type;
+		synchronized (classes) {
+			type = classes.get(name);
+			if (type == null) {
+				try {
+					type = Class.forName(name, false, ComponentSchema.class.getClassLoader());
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Unknown class in snapshot: " + name);
+				}
+				classes.put(name, type);
+			}
+		}
+		if (!base.isAssignableFrom(type))
+			throw new IOException("Class in snapshot is not a " + base.getName() + ": " + name);
+		return type;
+	}
+
+	private ComponentSchema(Class<? extends Component> type) {
+		this.type = type;
+
+		// fields are ordered by class (superclass first) and then name so that the layout doesn't depend on the
+		// order the JVM happens to return them in
+		Array<Field> serializable = new Array<Field>();
+		Array<Class<?>> hierarchy = new Array<Class<?>>();
+		for (Class<?> c = type; c != null && c != Component.class; c = c.getSuperclass())
+			hierarchy.insert(0, c);
+
+		for (int i = 0; i < hierarchy.size; ++i) {
+			Array<Field> declared = new Array<Field>(hierarchy.get(i).getDeclaredFields());
+			declared.sort(FIELD_NAME_COMPARATOR);
+			for (int j = 0; j < declared.size; ++j) {
+				Field field = declared.get(j);
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+					continue;
+				serializable.add(field);
+			}
+		}
+
+		fields = new Field[serializable.size];
+		names = new String[serializable.size];
+		kinds = new byte[serializable.size];
+		enumConstants = new Object[serializable.size][];
+		classBounds = new Class<?>[serializable.size];
+		for (int i = 0; i < serializable.size; ++i) {
+			Field field = serializable.get(i);
+			field.setAccessible(true);
+			fields[i] = field;
+			names[i] = field.getName();
+			kinds[i] = getKind(field);
+			if (kinds[i] == ENUM)
+				enumConstants[i] = field.getType().getEnumConstants();
+			else if (kinds[i] == CLASS)
+				classBounds[i] = getClassBound(field);
+		}
+	}
+
+	/*** schema headers ***/
+
+	void writeHeader(DataOutput out) throws IOException {
+		out.writeUTF(type.getName());
+		out.writeShort(fields.length);
+		for (int i = 0; i < fields.length; ++i) {
+			out.writeUTF(names[i]);
+			out.writeByte(kinds[i]);
+		}
+	}
+
+	static ComponentSchema readHeader(DataInput in) throws IOException {
+		Class<?> type = getClassByName(in.readUTF(), Component.class);
+		ComponentSchema schema = get(type.asSubclass(Component.class));
+
+		int numFields = in.readShort();
+		boolean matches = (numFields == schema.fields.length);
+		for (int i = 0; i < numFields; ++i) {
+			String name = in.readUTF();
+			byte kind = in.readByte();
+			if (matches && (!name.equals(schema.names[i]) || kind != schema.kinds[i]))
+				matches = false;
+		}
+		if (!matches)
+			throw new IOException("Snapshot fields for " + type.getName() + " do not match the current class.");
+
+		return schema;
+	}
+
+	/*** component data ***/
+
+	void write(Component component, DataOutput out) throws IOException {
+		try {
+			for (int i = 0; i < fields.length; ++i)
+				writeField(fields[i], kinds[i], component, out);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Could not read fields of " + type.getName(), e);
+		}
+	}
+
+	void read(Component component, DataInput in, EntityManager entityManager) throws IOException {
+		try {
+			for (int i = 0; i < fields.length; ++i)
+				readField(i, component, in, entityManager);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Could not set fields of " + type.getName(), e);
+		}
+	}
+
+	private static void writeField(Field field, byte kind, Component component, DataOutput out) throws IOException, IllegalAccessException {
+		switch (kind) {
+			case BOOLEAN: out.writeBoolean(field.getBoolean(component)); break;
+			case BYTE:    out.writeByte(field.getByte(component)); break;
+			case SHORT:   out.writeShort(field.getShort(component)); break;
+			case CHAR:    out.writeChar(field.getChar(component)); break;
+			case INT:     out.writeInt(field.getInt(component)); break;
+			case LONG:    out.writeLong(field.getLong(component)); break;
+			case FLOAT:   out.writeFloat(field.getFloat(component)); break;
+			case DOUBLE:  out.writeDouble(field.getDouble(component)); break;
+
+			case STRING: {
+				String value = (String)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null)
+					out.writeUTF(value);
+				break;
+			}
+			case ENUM: {
+				Enum<?> value = (Enum<?>)field.get(component);
+				out.writeShort(value == null ? -1 : value.ordinal());
+				break;
+			}
+			case CLASS: {
+				Class<?> value = (Class<?>)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null)
+					out.writeUTF(value.getName());
+				break;
+			}
+			case ENTITY: {
+				Entity value = (Entity)field.get(component);
+				out.writeLong(value == null || !value.isValid() ? EntityHandle.NONE : value.getHandle());
+				break;
+			}
+			case VECTOR2: {
+				Vector2 value = (Vector2)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null) {
+					out.writeFloat(value.x);
+					out.writeFloat(value.y);
+				}
+				break;
+			}
+			case VECTOR3: {
+				Vector3 value = (Vector3)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null) {
+					out.writeFloat(value.x);
+					out.writeFloat(value.y);
+					out.writeFloat(value.z);
+				}
+				break;
+			}
+			case QUATERNION: {
+				Quaternion value = (Quaternion)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null) {
+					out.writeFloat(value.x);
+					out.writeFloat(value.y);
+					out.writeFloat(value.z);
+					out.writeFloat(value.w);
+				}
+				break;
+			}
+			case COLOR: {
+				Color value = (Color)field.get(component);
+				out.writeBoolean(value != null);
+				if (value != null) {
+					out.writeFloat(value.r);
+					out.writeFloat(value.g);
+					out.writeFloat(value.b);
+					out.writeFloat(value.a);
+				}
+				break;
+			}
+		}
+	}
+
+	private void readField(int i, Component component, DataInput in, EntityManager entityManager) throws IOException, IllegalAccessException {
+		Field field = fields[i];
+		switch (kinds[i]) {
+			case BOOLEAN: field.setBoolean(component, in.readBoolean()); break;
+			case BYTE:    field.setByte(component, in.readByte()); break;
+			case SHORT:   field.setShort(component, in.readShort()); break;
+			case CHAR:    field.setChar(component, in.readChar()); break;
+			case INT:     field.setInt(component, in.readInt()); break;
+			case LONG:    field.setLong(component, in.readLong()); break;
+			case FLOAT:   field.setFloat(component, in.readFloat()); break;
+			case DOUBLE:  field.setDouble(component, in.readDouble()); break;
+
+			case STRING:
+				field.set(component, in.readBoolean() ? in.readUTF() : null);
+				break;
+			case ENUM: {
+				int ordinal = in.readShort();
+				if (ordinal < -1 || ordinal >= enumConstants[i].length)
+					throw new IOException(String.format("Invalid value %d in snapshot for enum field %s.%s", ordinal, type.getName(), names[i]));
+				field.set(component, ordinal == -1 ? null : enumConstants[i][ordinal]);
+				break;
+			}
+			case CLASS:
+				field.set(component, in.readBoolean() ? getClassByName(in.readUTF(), classBounds[i]) : null);
+				break;
+			case ENTITY:
+				field.set(component, entityManager.get(in.readLong()));
+				break;
+
+			// for these, write into the existing instance if there is one, so that final fields work
+			case VECTOR2: {
+				if (!in.readBoolean()) {
+					field.set(component, null);
+					break;
+				}
+				Vector2 value = (Vector2)field.get(component);
+				if (value == null) {
+					value = new Vector2();
+					field.set(component, value);
+				}
+				value.set(in.readFloat(), in.readFloat());
+				break;
+			}
+			case VECTOR3: {
+				if (!in.readBoolean()) {
+					field.set(component, null);
+					break;
+				}
+				Vector3 value = (Vector3)field.get(component);
+				if (value == null) {
+					value = new Vector3();
+					field.set(component, value);
+				}
+				value.set(in.readFloat(), in.readFloat(), in.readFloat());
+				break;
+			}
+			case QUATERNION: {
+				if (!in.readBoolean()) {
+					field.set(component, null);
+					break;
+				}
+				Quaternion value = (Quaternion)field.get(component);
+				if (value == null) {
+					value = new Quaternion();
+					field.set(component, value);
+				}
+				value.set(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+				break;
+			}
+			case COLOR: {
+				if (!in.readBoolean()) {
+					field.set(component, null);
+					break;
+				}
+				Color value = (Color)field.get(component);
+				if (value == null) {
+					value = new Color();
+					field.set(component, value);
+				}
+				value.set(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+				break;
+			}
+		}
+	}
+
+	private static Class<?> getClassBound(Field field) {
+		Type type = field.getGenericType();
+		if (type instanceof ParameterizedType) {
+			Type arg = ((ParameterizedType)type).getActualTypeArguments()[0];
+			if (arg instanceof WildcardType)
+				arg = ((WildcardType)arg).getUpperBounds()[0];
+			if (arg instanceof Class)
+				return (Class<?>)arg;
+		}
+		return Object.class;
+	}
+
+	private byte getKind(Field field) {
+		Class<?> fieldType = field.getType();
+		if (fieldType == boolean.class)           return BOOLEAN;
+		else if (fieldType == byte.class)         return BYTE;
+		else if (fieldType == short.class)        return SHORT;
+		else if (fieldType == char.class)         return CHAR;
+		else if (fieldType == int.class)          return INT;
+		else if (fieldType == long.class)         return LONG;
+		else if (fieldType == float.class)        return FLOAT;
+		else if (fieldType == double.class)       return DOUBLE;
+		else if (fieldType == String.class)       return STRING;
+		else if (fieldType.isEnum())              return ENUM;
+		else if (fieldType == Class.class)        return CLASS;
+		else if (fieldType == Entity.class)       return ENTITY;
+		else if (fieldType == Vector2.class)      return VECTOR2;
+		else if (fieldType == Vector3.class)      return VECTOR3;
+		else if (fieldType == Quaternion.class)   return QUATERNION;
+		else if (fieldType == Color.class)        return COLOR;
+		else
+			throw new IllegalArgumentException(String.format("Field %s.%s of type %s can not be serialized. Mark it transient to skip it.",
+			                                                 type.getSimpleName(), field.getName(), fieldType.getSimpleName()));
+	}
+
+	static final Comparator<Field> FIELD_NAME_COMPARATOR = new Comparator<Field>() {
+		@Override
+		public int compare(Field a, Field b) {
+			return a.getName().compareTo(b.getName());
+		}
+	};
+}
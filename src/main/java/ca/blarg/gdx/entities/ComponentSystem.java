@@ -3,17 +3,50 @@ package ca.blarg.gdx.entities;
 import ca.blarg.gdx.events.Event;
 import ca.blarg.gdx.events.EventHandler;
 import ca.blarg.gdx.events.EventManager;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 
 public abstract class ComponentSystem extends EventHandler implements Disposable {
 	public final EntityManager entityManager;
 
+	final Array<Class<? extends Component>> readTypes;
+	final Array<Class<? extends Component>> writeTypes;
+	boolean declaresAccess;
+	SystemStats stats;          // only while the EntityManager's instrumentation is turned on
+
 	public ComponentSystem(EntityManager entityManager, EventManager eventManager) {
 		super(eventManager);
 		if (entityManager == null)
 			throw new IllegalArgumentException("entityManager can not be null.");
 
 		this.entityManager = entityManager;
+		readTypes = new Array<Class<? extends Component>>();
+		writeTypes = new Array<Class<? extends Component>>();
+	}
+
+	// declaring which component types this system's onUpdateGameState() reads and writes lets EntityManager run
+	// it alongside other systems it doesn't conflict with (see EntityManager.setUpdateExecutor()). systems which
+	// declare nothing are assumed to touch everything and are always run on their own.
+	// a system running alongside others must not add/remove entities or components directly (record them into
+	// entityManager.commandBuffer instead), or queue events. the EntityManager reads it can safely make are
+	// getAllWith(), getFirstWith(), getArchetypesWith(), getComponent() / Entity.get() / Entity.has(), getGlobal()
+	// and reading through an EntityQuery it got hold of beforehand (e.g. in its constructor). getQuery() itself
+	// must not be called while running alongside other systems
+
+	// the varargs array is only copied into readTypes, never kept or written to (no @SafeVarargs before java 7)
+	@SuppressWarnings("unchecked")
+	protected void reads(Class<? extends Component>... componentTypes) {
+		readTypes.addAll(componentTypes);
+		declaresAccess = true;
+		entityManager.onSubsystemsChanged();
+	}
+
+	// the varargs array is only copied into writeTypes, never kept or written to
+	@SuppressWarnings("unchecked")
+	protected void writes(Class<? extends Component>... componentTypes) {
+		writeTypes.addAll(componentTypes);
+		declaresAccess = true;
+		entityManager.onSubsystemsChanged();
 	}
 
 	public void onAppPause() {
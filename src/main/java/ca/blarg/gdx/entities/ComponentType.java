@@ -0,0 +1,94 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// per-EntityManager bookkeeping for a single type of component
+
+final class ComponentType {
+	final int id;
+	final Class<? extends Component> type;
+	final Array<Archetype> archetypes;
+	final Array<Entities> freeEntities;
+
+	ComponentType(int id, Class<? extends Component> type) {
+		this.id = id;
+		this.type = type;
+		archetypes = new Array<Archetype>(false, 8, Archetype.class);
+		freeEntities = new Array<Entities>(false, 4, Entities.class);
+	}
+
+	// hands out an iterator nobody else is using. iterators go back to the pool by themselves once they have been
+	// iterated to the end, so any depth of nested loops over this type works, and only loops that are broken out
+	// of early leave an iterator behind for the garbage collector. systems running concurrently (see SystemScheduler)
+	// can each get their own iterator at the same time
+	Entities entities() {
+		Entities entities = null;
+		synchronized (freeEntities) {
+			if (freeEntities.size > 0)
+				entities = freeEntities.pop();
+		}
+		if (entities == null)
+			entities = new Entities();
+		return entities.reset();
+	}
+
+	// iterator over all entities that have this component type. walks through each archetype in reverse so that
+	// removing the entity just returned by next() (or removing this component type from it) is safe
+	final class Entities implements Iterable<Entity>, Iterator<Entity> {
+		int archetypeIndex;
+		int row;
+		boolean isFree;
+
+		Entities reset() {
+			archetypeIndex = archetypes.size - 1;
+			row = Integer.MAX_VALUE;
+			isFree = false;
+			return this;
+		}
+
+		@Override
+		public Iterator<Entity> iterator() {
+			return reset();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (archetypeIndex >= 0) {
+				Archetype archetype = archetypes.items[archetypeIndex];
+				if (row >= archetype.size)
+					row = archetype.size - 1;
+				if (row >= 0)
+					return true;
+
+				--archetypeIndex;
+				row = Integer.MAX_VALUE;
+			}
+
+			if (!isFree) {
+				isFree = true;
+				synchronized (freeEntities) {
+					freeEntities.add(this);
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Entity next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			Entity entity = archetypes.items[archetypeIndex].entities[row];
+			--row;
+			return entity;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
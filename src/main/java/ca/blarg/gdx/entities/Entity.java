@@ -12,6 +12,10 @@ import ca.blarg.gdx.entities.systemcomponents.InactiveComponent;
 
 public final class Entity {
 	EntityManager entityManager;
+	Archetype archetype;
+	int row;
+	int index = -1;
+	int generation;
 
 	/**
 	 * Do not instantiate Entity's directly. Use EntityManager.add().
@@ -23,6 +27,14 @@ public final class Entity {
 		this.entityManager = entityManager;
 	}
 
+	public long getHandle() {
+		return EntityHandle.of(index, generation);
+	}
+
+	public boolean isValid() {
+		return entityManager.isValid(this);
+	}
+
 	public <T extends Component> T get(Class<T> componentType) {
 		return entityManager.getComponent(componentType, this);
 	}
@@ -39,6 +51,10 @@ public final class Entity {
 		return entityManager.hasComponent(componentType, this);
 	}
 
+	public <T extends Component> void markChanged(Class<T> componentType) {
+		entityManager.markChanged(componentType, this);
+	}
+
 	public boolean wasCreatedViaPreset() {
 		return entityManager.hasComponent(EntityPresetComponent.class, this);
 	}
@@ -0,0 +1,75 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.IntArray;
+
+// records which entities (by index) and which of their components changed since the last clear(). an entity is
+// listed once no matter how many times it changed. "all components" covers entities which were created (or removed
+// and then re-created at the same index), where every component needs to be written out again
+
+final class EntityChangeTracker {
+	final IntArray changedIndices;
+	final Bits changedEntities;
+	final Bits allComponentsChanged;
+	Bits[] changedTypes;        // indexed by entity index, only allocated for entities which have ever changed
+	boolean isEntityTableChanged;
+
+	EntityChangeTracker() {
+		changedIndices = new IntArray();
+		changedEntities = new Bits();
+		allComponentsChanged = new Bits();
+		changedTypes = new Bits[64];
+	}
+
+	// the entity's set of components (or the entity itself) changed, but no component data needs to be written
+	void markEntity(int index) {
+		if (!changedEntities.getAndSet(index))
+			changedIndices.add(index);
+	}
+
+	void markAllComponents(int index) {
+		markEntity(index);
+		allComponentsChanged.set(index);
+	}
+
+	void markComponent(int index, int typeId) {
+		markEntity(index);
+		if (index >= changedTypes.length) {
+			Bits[] newChangedTypes = new Bits[Math.max(index + 1, (int)(changedTypes.length * 1.75f))];
+			System.arraycopy(changedTypes, 0, newChangedTypes, 0, changedTypes.length);
+			changedTypes = newChangedTypes;
+		}
+
+		Bits types = changedTypes[index];
+		if (types == null) {
+			types = new Bits();
+			changedTypes[index] = types;
+		}
+		types.set(typeId);
+	}
+
+	boolean isComponentChanged(int index, int typeId) {
+		if (allComponentsChanged.get(index))
+			return true;
+		else if (index >= changedTypes.length || changedTypes[index] == null)
+			return false;
+		else
+			return changedTypes[index].get(typeId);
+	}
+
+	boolean isEmpty() {
+		return changedIndices.size == 0 && !isEntityTableChanged;
+	}
+
+	void clear() {
+		for (int i = 0; i < changedIndices.size; ++i) {
+			int index = changedIndices.items[i];
+			if (index < changedTypes.length && changedTypes[index] != null)
+				changedTypes[index].clear();
+		}
+		changedIndices.clear();
+		changedEntities.clear();
+		allComponentsChanged.clear();
+		isEntityTableChanged = false;
+	}
+}
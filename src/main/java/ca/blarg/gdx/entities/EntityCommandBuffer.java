@@ -0,0 +1,142 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ByteArray;
+
+/**
+ * Records entity/component adds and removes so that they can be applied later, all at once, from a point where
+ * nothing is iterating over entities (see playback()). Recording is safe from any number of threads at once, but
+ * playback() must only be called from the thread that owns the EntityManager.
+ *
+ * Entities returned by create() and components returned by addComponent() can be set up immediately, but the
+ * entity only becomes valid (and the component only becomes attached) once the buffer has been played back.
+ */
+public class EntityCommandBuffer {
+	static final byte CREATE = 0;
+	static final byte ADD_COMPONENT = 1;
+	static final byte REMOVE_COMPONENT = 2;
+	static final byte REMOVE = 3;
+
+	public final EntityManager entityManager;
+
+	final ByteArray ops;
+	final Array<Entity> entities;
+	final Array<Object> values;   // component instance for ADD_COMPONENT, component type for REMOVE_COMPONENT
+
+	public EntityCommandBuffer(EntityManager entityManager) {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+
+		this.entityManager = entityManager;
+		ops = new ByteArray();
+		entities = new Array<Entity>(true, 16, Entity.class);
+		values = new Array<Object>();
+	}
+
+	/*** recording ***/
+
+	public synchronized Entity create() {
+		Entity entity = new Entity(entityManager);
+		record(CREATE, entity, null);
+		return entity;
+	}
+
+	public synchronized <T extends Component> T addComponent(Entity entity, Class<T> componentType) {
+		if (entity == null)
+			throw new IllegalArgumentException("entity can not be null.");
+
+		T component = entityManager.obtainComponent(componentType);
+		record(ADD_COMPONENT, entity, component);
+		return component;
+	}
+
+	public synchronized <T extends Component> void removeComponent(Entity entity, Class<T> componentType) {
+		if (entity == null)
+			throw new IllegalArgumentException("entity can not be null.");
+
+		record(REMOVE_COMPONENT, entity, componentType);
+	}
+
+	public synchronized void remove(Entity entity) {
+		if (entity == null)
+			throw new IllegalArgumentException("entity can not be null.");
+
+		record(REMOVE, entity, null);
+	}
+
+	public synchronized boolean isEmpty() {
+		return ops.size == 0;
+	}
+
+	/*** playback ***/
+
+	@SuppressWarnings("unchecked")
+	public synchronized void playback() {
+		for (int i = 0; i < ops.size; ++i) {
+			Entity entity = entities.items[i];
+			Object value = values.items[i];
+
+			switch (ops.items[i]) {
+				case CREATE:
+					entityManager.register(entity);
+					break;
+
+				case ADD_COMPONENT:
+					Component component = (Component)value;
+					if (!entityManager.isValid(entity) || entity.has(component.getClass())) {
+						// entity was removed or got this type of component some other way since this was recorded
+						entityManager.freeComponent(component);
+					} else {
+						ComponentType type = entityManager.getComponentType(component.getClass(), true);
+						entityManager.attachComponent(type, entity, component);
+					}
+					break;
+
+				case REMOVE_COMPONENT:
+					entityManager.removeComponent((Class<? extends Component>)value, entity);
+					break;
+
+				case REMOVE:
+					entityManager.remove(entity);
+					break;
+			}
+		}
+
+		reset();
+	}
+
+	// moves everything recorded onto the end of another buffer for the same EntityManager, leaving this one empty
+	synchronized void moveTo(EntityCommandBuffer other) {
+		if (other.entityManager != entityManager)
+			throw new IllegalArgumentException("Can not move commands to a buffer for a different EntityManager.");
+
+		synchronized (other) {
+			other.ops.addAll(ops);
+			other.entities.addAll(entities);
+			other.values.addAll(values);
+		}
+		reset();
+	}
+
+	// discards everything recorded without applying any of it
+	public synchronized void clear() {
+		for (int i = 0; i < ops.size; ++i) {
+			if (ops.items[i] == ADD_COMPONENT)
+				entityManager.freeComponent((Component)values.items[i]);
+		}
+
+		reset();
+	}
+
+	private void record(byte op, Entity entity, Object value) {
+		ops.add(op);
+		entities.add(entity);
+		values.add(value);
+	}
+
+	private void reset() {
+		ops.clear();
+		entities.clear();
+		values.clear();
+	}
+}
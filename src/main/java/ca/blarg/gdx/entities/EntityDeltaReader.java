@@ -0,0 +1,198 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.io.ByteBufferInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Applies a delta written by EntityDeltaWriter to an EntityManager. Entities are created, removed and have
+ * components added/removed as needed so that the changed entities end up exactly as they were when the delta was
+ * written (including their handles). Components are obtained from and freed to the EntityManager's pools.
+ */
+public class EntityDeltaReader {
+	final Array<ComponentSchema> schemas;
+	final Array<Entity> changedEntities;
+	final IntArray dataTypes;       // per changed entity: the number of types with data, then those type indices
+	final IntArray freeIndices;
+	final Array<Class<? extends Component>> globalTypes;
+
+	public EntityDeltaReader() {
+		schemas = new Array<ComponentSchema>();
+		changedEntities = new Array<Entity>(true, 16, Entity.class);
+		dataTypes = new IntArray();
+		freeIndices = new IntArray();
+		globalTypes = new Array<Class<? extends Component>>();
+	}
+
+	public void read(EntityManager entityManager, FileHandle file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(file.read()));
+			read(entityManager, in);
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error reading entity delta: " + file, e);
+		} finally {
+			StreamUtils.closeQuietly(in);
+		}
+	}
+
+	public void read(EntityManager entityManager, ByteBuffer buffer) {
+		try {
+			read(entityManager, new DataInputStream(new ByteBufferInputStream(buffer)));
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error reading entity delta.", e);
+		}
+	}
+
+	public void read(EntityManager entityManager, DataInput in) throws IOException {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+
+		if (in.readInt() != EntityDeltaWriter.MAGIC)
+			throw new IOException("Not an entity delta.");
+		short version = in.readShort();
+		if (version != EntityDeltaWriter.VERSION)
+			throw new IOException("Unsupported entity delta version: " + version);
+
+		try {
+			int numTypes = in.readShort();
+			for (int i = 0; i < numTypes; ++i)
+				schemas.add(ComponentSchema.readHeader(in));
+
+			boolean isEntityTableChanged = in.readBoolean();
+			int nextIndex = entityManager.nextIndex;
+			if (isEntityTableChanged) {
+				nextIndex = in.readInt();
+				int numFreeIndices = in.readInt();
+				freeIndices.ensureCapacity(numFreeIndices);
+				for (int i = 0; i < numFreeIndices; ++i)
+					freeIndices.add(in.readInt());
+
+				// changed entities can be at indices past the current end of the table
+				entityManager.ensureEntityCapacity(nextIndex);
+				entityManager.nextIndex = Math.max(entityManager.nextIndex, nextIndex);
+			}
+
+			readChangedEntities(entityManager, in);
+
+			if (isEntityTableChanged) {
+				entityManager.nextIndex = nextIndex;
+				entityManager.freeIndices.clear();
+				entityManager.freeIndices.addAll(freeIndices);
+			}
+
+			readComponentData(entityManager, in);
+			readGlobals(entityManager, in);
+		} finally {
+			schemas.clear();
+			changedEntities.clear();
+			dataTypes.clear();
+			freeIndices.clear();
+			globalTypes.clear();
+		}
+	}
+
+	/*** sections ***/
+
+	private void readChangedEntities(EntityManager entityManager, DataInput in) throws IOException {
+		int numChanged = in.readInt();
+		for (int i = 0; i < numChanged; ++i) {
+			int index = in.readInt();
+			int generation = in.readInt();
+			boolean isAlive = in.readBoolean();
+
+			Entity entity = entityManager.entities[index];
+			if (entity != null && (!isAlive || entity.generation != generation)) {
+				entityManager.remove(entity);
+				entity = null;
+			}
+			entityManager.generations[index] = generation;
+			if (!isAlive)
+				continue;
+
+			int numTypes = in.readShort();
+			int[] types = new int[numTypes];
+			int dataStart = dataTypes.size;
+			dataTypes.add(0);
+			for (int j = 0; j < numTypes; ++j) {
+				int typeIndex = in.readShort();
+				types[j] = entityManager.getComponentType(schemas.get(typeIndex).type, true).id;
+				if (in.readBoolean()) {
+					dataTypes.add(typeIndex);
+					dataTypes.incr(dataStart, 1);
+				}
+			}
+			Arrays.sort(types);
+
+			if (entity == null) {
+				// a new entity, it can go straight into its final archetype
+				entity = new Entity(entityManager);
+				Archetype archetype = entityManager.getArchetype(types);
+				int row = entityManager.registerAt(entity, index, archetype);
+				for (int j = 0; j < types.length; ++j)
+					archetype.columns[j][row] = entityManager.obtainComponent(entityManager.componentTypesById.items[types[j]].type);
+			} else
+				setComponentTypes(entityManager, entity, types);
+
+			changedEntities.add(entity);
+		}
+	}
+
+	private void readComponentData(EntityManager entityManager, DataInput in) throws IOException {
+		int n = 0;
+		for (int i = 0; i < changedEntities.size; ++i) {
+			Entity entity = changedEntities.items[i];
+			int count = dataTypes.get(n++);
+			for (int j = 0; j < count; ++j) {
+				ComponentSchema schema = schemas.get(dataTypes.get(n++));
+				schema.read(entityManager.getComponent(schema.type, entity), in, entityManager);
+			}
+			entityManager.updatePresetIndex(entity);
+		}
+	}
+
+	private void readGlobals(EntityManager entityManager, DataInput in) throws IOException {
+		int numGlobals = in.readShort();
+		for (int i = 0; i < numGlobals; ++i) {
+			ComponentSchema schema = schemas.get(in.readShort());
+			Component component = entityManager.getGlobal(schema.type);
+			if (component == null)
+				component = entityManager.addGlobal(schema.type);
+			schema.read(component, in, entityManager);
+			globalTypes.add(schema.type);
+		}
+
+		// any other globals were removed
+		int numInDelta = globalTypes.size;
+		for (ObjectMap.Entry<Class<? extends Component>, Component> i : entityManager.globalComponents.entries()) {
+			if (!globalTypes.contains(i.key, true))
+				globalTypes.add(i.key);
+		}
+		for (int i = numInDelta; i < globalTypes.size; ++i)
+			entityManager.removeGlobal(globalTypes.get(i));
+	}
+
+	// brings an existing entity's set of components in line with the given (sorted) set of type ids
+	private void setComponentTypes(EntityManager entityManager, Entity entity, int[] types) {
+		int[] currentTypes = entity.archetype.types;
+		for (int i = currentTypes.length - 1; i >= 0; --i) {
+			if (Arrays.binarySearch(types, currentTypes[i]) < 0)
+				entityManager.removeComponent(entityManager.componentTypesById.items[currentTypes[i]].type, entity);
+		}
+		for (int i = 0; i < types.length; ++i) {
+			if (!entity.archetype.hasType(types[i]))
+				entityManager.addComponent(entityManager.componentTypesById.items[types[i]].type, entity);
+		}
+	}
+}
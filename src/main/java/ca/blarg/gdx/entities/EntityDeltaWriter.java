@@ -0,0 +1,174 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.io.ByteBufferOutputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes out only what changed in an EntityManager since the last delta (or since change tracking was turned on /
+ * last cleared), and then clears the EntityManager's tracked changes. Applying the deltas in order with
+ * EntityDeltaReader to an EntityManager which started out in the same state (e.g. restored from a snapshot taken
+ * at the time change tracking was cleared) brings it up to the same state.
+ *
+ * For every changed entity the full set of component types it has is written, but component data is only written
+ * for components which were added or marked as changed with EntityManager.markChanged(). Global components are
+ * always written in full.
+ */
+public class EntityDeltaWriter {
+	static final int MAGIC = 0x47455344;   // "GESD"
+	static final short VERSION = 1;
+
+	final ObjectIntMap<Class<? extends Component>> typeIndices;
+	final Array<ComponentSchema> schemas;
+
+	public EntityDeltaWriter() {
+		typeIndices = new ObjectIntMap<Class<? extends Component>>();
+		schemas = new Array<ComponentSchema>();
+	}
+
+	public void write(EntityManager entityManager, FileHandle file) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(file.write(false)));
+			write(entityManager, out);
+			out.flush();
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error writing entity delta: " + file, e);
+		} finally {
+			StreamUtils.closeQuietly(out);
+		}
+	}
+
+	public void write(EntityManager entityManager, ByteBuffer buffer) {
+		try {
+			write(entityManager, new DataOutputStream(new ByteBufferOutputStream(buffer)));
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error writing entity delta.", e);
+		}
+	}
+
+	public void write(EntityManager entityManager, DataOutput out) throws IOException {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+		EntityChangeTracker changes = entityManager.changes;
+		if (changes == null)
+			throw new IllegalStateException("Change tracking is not turned on for this EntityManager.");
+
+		collectTypes(entityManager, changes);
+
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+
+		out.writeShort(schemas.size);
+		for (int i = 0; i < schemas.size; ++i)
+			schemas.get(i).writeHeader(out);
+
+		out.writeBoolean(changes.isEntityTableChanged);
+		if (changes.isEntityTableChanged) {
+			out.writeInt(entityManager.nextIndex);
+			int[] freeIndices = entityManager.freeIndices.items;
+			out.writeInt(entityManager.freeIndices.size);
+			for (int i = 0; i < entityManager.freeIndices.size; ++i)
+				out.writeInt(freeIndices[i]);
+		}
+
+		writeChangedEntities(entityManager, changes, out);
+		writeGlobals(entityManager, out);
+
+		typeIndices.clear();
+		schemas.clear();
+		changes.clear();
+	}
+
+	/*** sections ***/
+
+	private void writeChangedEntities(EntityManager entityManager, EntityChangeTracker changes, DataOutput out) throws IOException {
+		// like snapshots, every changed entity is listed before any component data, so that Entity fields can be
+		// resolved on the reading side
+		int[] changedIndices = changes.changedIndices.items;
+		int numChanged = changes.changedIndices.size;
+
+		out.writeInt(numChanged);
+		for (int i = 0; i < numChanged; ++i) {
+			int index = changedIndices[i];
+			Entity entity = entityManager.entities[index];
+			out.writeInt(index);
+			out.writeInt(entityManager.generations[index]);
+			out.writeBoolean(entity != null);
+			if (entity == null)
+				continue;
+
+			Archetype archetype = entity.archetype;
+			out.writeShort(archetype.types.length);
+			for (int j = 0; j < archetype.types.length; ++j) {
+				int typeId = archetype.types[j];
+				out.writeShort(typeIndices.get(entityManager.componentTypesById.items[typeId].type, -1));
+				out.writeBoolean(changes.isComponentChanged(index, typeId));
+			}
+		}
+
+		for (int i = 0; i < numChanged; ++i) {
+			int index = changedIndices[i];
+			Entity entity = entityManager.entities[index];
+			if (entity == null)
+				continue;
+
+			Archetype archetype = entity.archetype;
+			for (int j = 0; j < archetype.types.length; ++j) {
+				int typeId = archetype.types[j];
+				if (!changes.isComponentChanged(index, typeId))
+					continue;
+
+				ComponentSchema schema = schemas.get(typeIndices.get(entityManager.componentTypesById.items[typeId].type, -1));
+				schema.write(archetype.columns[j][entity.row], out);
+			}
+		}
+	}
+
+	private void writeGlobals(EntityManager entityManager, DataOutput out) throws IOException {
+		out.writeShort(entityManager.globalComponents.size);
+		for (ObjectMap.Entry<Class<? extends Component>, Component> i : entityManager.globalComponents.entries()) {
+			int typeIndex = typeIndices.get(i.key, -1);
+			out.writeShort(typeIndex);
+			schemas.get(typeIndex).write(i.value, out);
+		}
+	}
+
+	/*** type table ***/
+
+	private void collectTypes(EntityManager entityManager, EntityChangeTracker changes) {
+		typeIndices.clear();
+		schemas.clear();
+
+		for (int i = 0; i < changes.changedIndices.size; ++i) {
+			Entity entity = entityManager.entities[changes.changedIndices.items[i]];
+			if (entity == null)
+				continue;
+
+			int[] types = entity.archetype.types;
+			for (int j = 0; j < types.length; ++j)
+				addType(entityManager.componentTypesById.items[types[j]].type);
+		}
+
+		for (ObjectMap.Entry<Class<? extends Component>, Component> i : entityManager.globalComponents.entries())
+			addType(i.key);
+	}
+
+	private void addType(Class<? extends Component> type) {
+		if (typeIndices.containsKey(type))
+			return;
+
+		typeIndices.put(type, schemas.size);
+		schemas.add(ComponentSchema.get(type));
+	}
+}
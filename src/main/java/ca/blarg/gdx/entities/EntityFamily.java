@@ -0,0 +1,31 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+
+// describes a set of entities by the component types they must have and the component types they must not have.
+// pass to EntityManager.getQuery() to get an EntityQuery that is kept up to date with all matching entities
+
+public final class EntityFamily {
+	final Array<Class<? extends Component>> required;
+	final Array<Class<? extends Component>> excluded;
+
+	private EntityFamily() {
+		required = new Array<Class<? extends Component>>();
+		excluded = new Array<Class<? extends Component>>();
+	}
+
+	// componentTypes is only copied into required, so there's no heap pollution (no @SafeVarargs before java 7)
+	@SuppressWarnings("unchecked")
+	public static EntityFamily all(Class<? extends Component>... componentTypes) {
+		EntityFamily family = new EntityFamily();
+		family.required.addAll(componentTypes);
+		return family;
+	}
+
+	// same as all(), componentTypes is only copied
+	@SuppressWarnings("unchecked")
+	public EntityFamily exclude(Class<? extends Component>... componentTypes) {
+		excluded.addAll(componentTypes);
+		return this;
+	}
+}
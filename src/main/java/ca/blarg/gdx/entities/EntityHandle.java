@@ -0,0 +1,20 @@
+package ca.blarg.gdx.entities;
+
+// packs an entity's index and generation into a single long. a handle stays tied to the exact entity it was taken
+// from, so once that entity is removed the handle will never be valid again, even after the index is reused
+
+public final class EntityHandle {
+	public static final long NONE = 0;
+
+	public static long of(int index, int generation) {
+		return ((long)index << 32) | (generation & 0xffffffffL);
+	}
+
+	public static int index(long handle) {
+		return (int)(handle >>> 32);
+	}
+
+	public static int generation(long handle) {
+		return (int)handle;
+	}
+}
@@ -0,0 +1,185 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the state of an EntityManager for the last few (fixed-step) ticks in memory, so that it can be rolled back
+ * to any of them, e.g. for rollback netcode. Every keyframeInterval ticks a full snapshot is recorded, and only a
+ * delta (see EntityDeltaWriter) for the ticks in between. Restoring a tick reads the closest keyframe before it and
+ * then applies the deltas after that keyframe up to the tick.
+ *
+ * This turns change tracking on for the EntityManager. Component field changes need to be reported with
+ * EntityManager.markChanged() to end up in the deltas. Restoring re-creates Entity objects, so hold on to entity
+ * handles instead of Entity objects across a restore.
+ */
+public class EntityHistory {
+	public final EntityManager entityManager;
+
+	final int keyframeInterval;
+	final Record[] records;     // ring buffer, oldest tick first
+	int first;
+	int count;
+	int ticksSinceKeyframe;
+
+	final EntitySnapshotWriter snapshotWriter;
+	final EntitySnapshotReader snapshotReader;
+	final EntityDeltaWriter deltaWriter;
+	final EntityDeltaReader deltaReader;
+
+	static final class Record {
+		int tick;
+		boolean isKeyframe;
+		final Buffer buffer = new Buffer();
+		final DataOutputStream out = new DataOutputStream(buffer);
+	}
+
+	// ByteArrayOutputStream which allows reading its contents back without a copy
+	static final class Buffer extends ByteArrayOutputStream {
+		DataInputStream getInput() {
+			return new DataInputStream(new ByteArrayInputStream(buf, 0, count));
+		}
+	}
+
+	public EntityHistory(EntityManager entityManager, int capacity, int keyframeInterval) {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1.");
+		if (keyframeInterval < 1)
+			throw new IllegalArgumentException("keyframeInterval must be at least 1.");
+
+		this.entityManager = entityManager;
+		this.keyframeInterval = keyframeInterval;
+		records = new Record[capacity];
+		for (int i = 0; i < capacity; ++i)
+			records[i] = new Record();
+
+		snapshotWriter = new EntitySnapshotWriter();
+		snapshotReader = new EntitySnapshotReader();
+		deltaWriter = new EntityDeltaWriter();
+		deltaReader = new EntityDeltaReader();
+
+		entityManager.setChangeTracking(true);
+	}
+
+	/*** recording ***/
+
+	// records the EntityManager's current state as the given tick, which must be after the last recorded tick
+	public void record(int tick) {
+		if (count > 0 && tick <= getNewestTick())
+			throw new IllegalArgumentException("tick must be after the last recorded tick.");
+
+		Record record;
+		if (count < records.length)
+			record = records[(first + count++) % records.length];
+		else {
+			record = records[first];
+			first = (first + 1) % records.length;
+		}
+
+		record.tick = tick;
+		record.isKeyframe = (count == 1 || ticksSinceKeyframe + 1 >= keyframeInterval);
+		record.buffer.reset();
+		try {
+			if (record.isKeyframe) {
+				snapshotWriter.write(entityManager, record.out);
+				entityManager.clearChanges();
+				ticksSinceKeyframe = 0;
+			} else {
+				deltaWriter.write(entityManager, record.out);
+				++ticksSinceKeyframe;
+			}
+			record.out.flush();
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error recording entity history.", e);
+		}
+	}
+
+	/*** restoring ***/
+
+	public boolean canRestore(int tick) {
+		int position = getPosition(tick);
+		return position != -1 && getKeyframePosition(position) != -1;
+	}
+
+	/**
+	 * Puts the EntityManager back into the state it was in when the given tick was recorded, and forgets about all
+	 * ticks recorded after it. Returns false (and leaves the EntityManager alone) if the tick is not available,
+	 * either because it was never recorded or because it or its keyframe are too old.
+	 */
+	public boolean restore(int tick) {
+		int position = getPosition(tick);
+		if (position == -1)
+			return false;
+		int keyframePosition = getKeyframePosition(position);
+		if (keyframePosition == -1)
+			return false;
+
+		try {
+			snapshotReader.read(entityManager, getRecord(keyframePosition).buffer.getInput());
+			for (int i = keyframePosition + 1; i <= position; ++i)
+				deltaReader.read(entityManager, getRecord(i).buffer.getInput());
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error restoring entity history.", e);
+		}
+
+		entityManager.clearChanges();
+		count = position + 1;
+		ticksSinceKeyframe = position - keyframePosition;
+		return true;
+	}
+
+	/*** history info ***/
+
+	public int size() {
+		return count;
+	}
+
+	public int getOldestTick() {
+		if (count == 0)
+			throw new IllegalStateException("No ticks have been recorded.");
+		return getRecord(0).tick;
+	}
+
+	public int getNewestTick() {
+		if (count == 0)
+			throw new IllegalStateException("No ticks have been recorded.");
+		return getRecord(count - 1).tick;
+	}
+
+	public void clear() {
+		first = 0;
+		count = 0;
+		ticksSinceKeyframe = 0;
+	}
+
+	// position is relative to the oldest record
+	private Record getRecord(int position) {
+		return records[(first + position) % records.length];
+	}
+
+	private int getPosition(int tick) {
+		for (int i = count - 1; i >= 0; --i) {
+			int recordTick = getRecord(i).tick;
+			if (recordTick == tick)
+				return i;
+			else if (recordTick < tick)
+				break;
+		}
+		return -1;
+	}
+
+	private int getKeyframePosition(int position) {
+		for (int i = position; i >= 0; --i) {
+			if (getRecord(i).isKeyframe)
+				return i;
+		}
+		return -1;
+	}
+}
@@ -6,39 +6,62 @@ import ca.blarg.gdx.entities.systemcomponents.InactiveComponent;
 import ca.blarg.gdx.events.EventManager;
 import com.badlogic.gdx.utils.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
 public class EntityManager implements Disposable {
 	public final EventManager eventManager;
 
-	ObjectSet<Entity> entities;
-	ObjectMap<Class<? extends Component>, ObjectMap<Entity, Component>> componentStore;
+	// structural changes recorded here (from any thread) are applied at the end of every onUpdateGameState()
+	public final EntityCommandBuffer commandBuffer;
+
+	Entity[] entities;          // indexed by entity index, null for unused indices
+	int[] generations;          // indexed by entity index
+	IntArray freeIndices;
+	int numEntities;
+	int nextIndex;
+	ObjectMap<Class<? extends Component>, ComponentType> componentTypes;
+	Array<ComponentType> componentTypesById;
+	Array<Archetype> archetypes;
+	ObjectMap<Bits, Archetype> archetypesByMask;
+	Archetype emptyArchetype;
+	Array<EntityQuery> queries;
 	ObjectMap<Class<? extends Component>, Component> globalComponents;
 	Array<ComponentSystem> componentSystems;
 	ObjectMap<Class<? extends EntityPreset>, EntityPreset> presets;
-
-	Pool<Entity> entityPool = new Pool<Entity>() {
-		@Override
-		protected Entity newObject() {
-			return new Entity(EntityManager.this);
-		}
-	};
-
-	ObjectMap<Entity, Component> empty;
+	EntityPresetIndex presetIndex;
+	ExecutorService updateExecutor;
+	int updateParallelism;
+	SystemScheduler scheduler;
+	final Object componentPoolLock = new Object();
+	ObjectMap<Class<? extends Component>, ComponentPool<?>> componentPools;
+	int defaultComponentPoolMax;
+	EntityChangeTracker changes;   // null unless change tracking is turned on
+	EntityManagerStats stats;      // null unless instrumentation is turned on
 
 	public EntityManager(EventManager eventManager) {
 		if (eventManager == null)
 			throw new IllegalArgumentException("eventManager can not be null.");
 
 		this.eventManager = eventManager;
-		entities = new ObjectSet<Entity>();
-		componentStore = new ObjectMap<Class<? extends Component>, ObjectMap<Entity, Component>>();
+		commandBuffer = new EntityCommandBuffer(this);
+		entities = new Entity[64];
+		generations = new int[64];
+		freeIndices = new IntArray();
+		componentTypes = new ObjectMap<Class<? extends Component>, ComponentType>();
+		componentTypesById = new Array<ComponentType>(true, 16, ComponentType.class);
+		archetypes = new Array<Archetype>(true, 16, Archetype.class);
+		archetypesByMask = new ObjectMap<Bits, Archetype>();
+		queries = new Array<EntityQuery>(true, 16, EntityQuery.class);
+		emptyArchetype = getArchetype(new int[0]);
 		globalComponents = new ObjectMap<Class<? extends Component>, Component>();
 		componentSystems = new Array<ComponentSystem>();
 		presets = new ObjectMap<Class<? extends EntityPreset>, EntityPreset>();
-
-		// possibly ugliness, but this allows us to return empty.keys() in getAllWith()
-		// when there are no entities with a given component, preventing the calling code
-		// from needing to check for null before a for-loop
-		empty = new ObjectMap<Entity, Component>();
+		presetIndex = new EntityPresetIndex();
+		updateParallelism = 1;
+		componentPools = new ObjectMap<Class<? extends Component>, ComponentPool<?>>();
+		defaultComponentPoolMax = 100;
 	}
 
 	/*** public ComponentSystem management */
@@ -57,6 +80,7 @@ public class EntityManager implements Disposable {
 		}
 
 		componentSystems.add(subsystem);
+		onSubsystemsChanged();
 		return subsystem;
 	}
 
@@ -74,12 +98,40 @@ public class EntityManager implements Disposable {
 			return;
 
 		componentSystems.removeIndex(i);
+		onSubsystemsChanged();
 	}
 
 	public void removeAllSubsystems() {
 		for (int i = 0; i < componentSystems.size; ++i)
 			componentSystems.get(i).dispose();
 		componentSystems.clear();
+		onSubsystemsChanged();
+	}
+
+	/**
+	 * Lets onUpdateGameState() run ComponentSystems which declare non-conflicting component reads/writes
+	 * concurrently, and lets ParallelComponentSystems split their entities up, using the given executor. Pass null
+	 * to go back to running everything on the calling thread (the default). The executor is not shut down by this
+	 * EntityManager.
+	 */
+	public void setUpdateExecutor(ExecutorService executor) {
+		setUpdateExecutor(executor, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Same as setUpdateExecutor(ExecutorService), but with the maximum number of threads (including the calling
+	 * thread) that a single ParallelComponentSystem update should be split across.
+	 */
+	public void setUpdateExecutor(ExecutorService executor, int parallelism) {
+		if (executor != null && parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1.");
+
+		updateExecutor = executor;
+		updateParallelism = (executor == null ? 1 : parallelism);
+		if (executor == null)
+			scheduler = null;
+		else
+			scheduler = new SystemScheduler(this, executor);
 	}
 
 	/*** public EntityPreset management */
@@ -118,15 +170,126 @@ public class EntityManager implements Disposable {
 	/*** public Entity management ***/
 
 	public Entity add() {
-		Entity entity = entityPool.obtain();
-		entities.add(entity);
+		// Entity objects are intentionally not pooled. a stale reference to a removed entity stays invalid
+		// instead of silently turning into whatever entity is created next
+		Entity entity = new Entity(this);
+		register(entity);
 		return entity;
 	}
 
+	// gives an Entity object which isn't part of this EntityManager yet (e.g. one created by an
+	// EntityCommandBuffer) an index and puts it in the empty archetype
+	void register(Entity entity) {
+		register(entity, emptyArchetype);
+	}
+
+	// returns the entity's row in the given archetype. any component columns for that row are left for the
+	// caller to fill in
+	private int register(Entity entity, Archetype archetype) {
+		int index;
+		if (freeIndices.size > 0)
+			index = freeIndices.pop();
+		else {
+			index = nextIndex++;
+			ensureEntityCapacity(nextIndex);
+		}
+
+		// generations start at 1 so that no valid handle is ever equal to EntityHandle.NONE
+		if (generations[index] == 0)
+			generations[index] = 1;
+
+		return registerAt(entity, index, archetype);
+	}
+
+	// same as register(), but with a specific index (whose generation has already been set up). only used when
+	// restoring snapshots
+	int registerAt(Entity entity, int index, Archetype archetype) {
+		entity.index = index;
+		entity.generation = generations[index];
+		entities[index] = entity;
+		++numEntities;
+		if (changes != null) {
+			changes.markAllComponents(index);
+			changes.isEntityTableChanged = true;
+		}
+
+		int row = archetype.add(entity);
+		for (int i = 0; i < archetype.queries.size; ++i)
+			archetype.queries.items[i].add(entity);
+
+		return row;
+	}
+
+	/**
+	 * Adds many entities at once which all start out with the same set of components. The entities are created
+	 * directly with their final set of components (instead of moving through one intermediate set of components
+	 * per add() call) and all storage is resized up front. The new entities are added to outEntities, and their
+	 * components are ready to be filled in through Entity.get().
+	 */
+	// componentTypes is only read from, so there's no heap pollution (no @SafeVarargs before java 7)
+	@SuppressWarnings("unchecked")
+	public void add(int count, Array<Entity> outEntities, Class<? extends Component>... componentTypes) {
+		if (outEntities == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the new entities in.");
+		if (count <= 0)
+			return;
+
+		Archetype archetype = emptyArchetype;
+		for (int i = 0; i < componentTypes.length; ++i) {
+			ComponentType type = getComponentType(componentTypes[i], true);
+			if (!archetype.hasType(type.id))
+				archetype = getArchetypeWith(archetype, type.id);
+		}
+
+		reserve(archetype, count);
+		outEntities.ensureCapacity(count);
+
+		int firstRow = archetype.size;
+		for (int i = 0; i < count; ++i) {
+			Entity entity = new Entity(this);
+			register(entity, archetype);
+			outEntities.add(entity);
+		}
+
+		for (int i = 0; i < archetype.types.length; ++i) {
+			Class<? extends Component> componentType = componentTypesById.items[archetype.types[i]].type;
+			obtainComponents(componentType, archetype.columns[i], firstRow, count);
+		}
+	}
+
 	public <T extends EntityPreset> Entity addUsingPreset(Class<T> presetType) {
 		return addUsingPreset(presetType, null);
 	}
 
+	public <T extends EntityPreset> void addUsingPreset(Class<T> presetType, int count, EntityPreset.CreationArgs args, Array<Entity> outEntities) {
+		if (outEntities == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the new entities in.");
+
+		EntityPreset preset = presets.get(presetType);
+		if (preset == null)
+			throw new IllegalArgumentException("Cannot add entity using an unregistered EntityPreset.");
+		if (count <= 0)
+			return;
+
+		ensureEntityCapacity(nextIndex + count);
+
+		int start = outEntities.size;
+		preset.create(args, count, outEntities);
+
+		ComponentType presetComponentType = getComponentType(EntityPresetComponent.class, true);
+		for (int i = start; i < outEntities.size; ++i) {
+			Entity entity = outEntities.get(i);
+			EntityPresetComponent presetComponent = obtainComponent(EntityPresetComponent.class);
+			presetComponent.presetType = presetType;
+			attachComponent(presetComponentType, entity, presetComponent);
+			presetIndex.add(entity, presetType);
+
+			// all of these entities will most likely end up with the same set of components as the first one
+			if (i == start)
+				reserve(entity.archetype, outEntities.size - start - 1);
+		}
+	}
+
 	public <T extends EntityPreset> Entity addUsingPreset(Class<T> presetType, EntityPreset.CreationArgs args) {
 		EntityPreset preset = presets.get(presetType);
 		if (preset == null)
@@ -134,125 +297,230 @@ public class EntityManager implements Disposable {
 
 		Entity entity = preset.create(args);
 		entity.add(EntityPresetComponent.class).presetType = presetType;
+		presetIndex.add(entity, presetType);
 
 		return entity;
 	}
 
 	public <T extends Component> Entity getFirstWith(Class<T> componentType) {
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null)
+		ComponentType type = getComponentType(componentType, false);
+		if (type == null)
 			return null;
 
-		if (componentEntities.size > 0)
-			return componentEntities.keys().next();
-		else
-			return null;
+		for (int i = 0; i < type.archetypes.size; ++i) {
+			Archetype archetype = type.archetypes.items[i];
+			if (archetype.size > 0)
+				return archetype.entities[0];
+		}
+		return null;
 	}
 
-	public <T extends Component> ObjectMap.Keys<Entity> getAllWith(Class<T> componentType) {
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null)
-			return empty.keys();   // calling code won't need to check for null
+	// the returned Iterable can only be iterated over once. it is pooled and reused once it reaches the end
+	public <T extends Component> Iterable<Entity> getAllWith(Class<T> componentType) {
+		// doesn't register the type, so this is safe to call from systems running concurrently
+		ComponentType type = getComponentType(componentType, false);
+		if (type == null)
+			return Collections.emptyList();   // calling code won't need to check for null
 		else
-			return componentEntities.keys();
+			return type.entities();
+	}
+
+	public <T extends Component> void getArchetypesWith(Class<T> componentType, Array<Archetype> outArchetypes) {
+		if (outArchetypes == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the matching archetypes in.");
+
+		ComponentType type = getComponentType(componentType, false);
+		if (type != null)
+			outArchetypes.addAll(type.archetypes);
+	}
+
+	public EntityQuery getQuery(EntityFamily family) {
+		if (family == null)
+			throw new IllegalArgumentException("family can not be null.");
+
+		Bits requiredTypes = getComponentTypeMask(family.required);
+		Bits excludedTypes = getComponentTypeMask(family.excluded);
+
+		// systems interested in the same set of entities can share the same query
+		for (int i = 0; i < queries.size; ++i) {
+			if (queries.items[i].isFor(requiredTypes, excludedTypes))
+				return queries.items[i];
+		}
+
+		EntityQuery query = new EntityQuery(this, requiredTypes, excludedTypes);
+		queries.add(query);
+
+		for (int i = 0; i < archetypes.size; ++i) {
+			Archetype archetype = archetypes.items[i];
+			if (query.matches(archetype)) {
+				archetype.queries.add(query);
+				for (int j = 0; j < archetype.size; ++j)
+					query.add(archetype.entities[j]);
+			}
+		}
+
+		return query;
+	}
+
+	public void removeQuery(EntityQuery query) {
+		if (!queries.removeValue(query, true))
+			return;
+
+		for (int i = 0; i < archetypes.size; ++i)
+			archetypes.items[i].queries.removeValue(query, true);
 	}
 
+	// finds entities created with addUsingPreset() using the given preset type or any subclass of it
 	public <T extends EntityPreset> void getAllCreatedWithPreset(Class<T> presetType, Array<Entity> outMatchingEntities) {
 		if (outMatchingEntities == null)
 			throw new IllegalArgumentException("Must supply an Array object to store the matching entities in.");
 
-		for (Entity i : getAllWith(EntityPresetComponent.class)) {
-			EntityPresetComponent entityPreset = i.get(EntityPresetComponent.class);
-			if (presetType.isAssignableFrom(entityPreset.presetType))
-				outMatchingEntities.add(i);
-		}
+		presetIndex.getAll(presetType, outMatchingEntities);
 	}
 
 	public void remove(Entity entity) {
 		if (entity == null)
 			throw new IllegalArgumentException("entity can not be null.");
+		if (!isValid(entity))
+			return;
 
 		removeAllComponentsFrom(entity);
-		entities.remove(entity);
+		release(entity);
+	}
 
-		entityPool.free(entity);
+	public void remove(long handle) {
+		Entity entity = get(handle);
+		if (entity != null)
+			remove(entity);
 	}
 
 	public void removeAll() {
-		for (Entity i : entities) {
-			removeAllComponentsFrom(i);
-			entityPool.free(i);
+		for (int i = 0; i < nextIndex; ++i) {
+			Entity entity = entities[i];
+			if (entity != null) {
+				removeAllComponentsFrom(entity);
+				release(entity);
+			}
 		}
-
-		entities.clear();
 	}
 
 	public boolean isValid(Entity entity) {
 		if (entity == null)
 			return false;
 		else
-			return entities.contains(entity);
+			return entity.entityManager == this && entity.archetype != null;
+	}
+
+	public boolean isValid(long handle) {
+		int index = EntityHandle.index(handle);
+		if (index < 0 || index >= nextIndex)
+			return false;
+		else
+			return entities[index] != null && generations[index] == EntityHandle.generation(handle);
+	}
+
+	public Entity get(long handle) {
+		if (isValid(handle))
+			return entities[EntityHandle.index(handle)];
+		else
+			return null;
+	}
+
+	public int getNumEntities() {
+		return numEntities;
 	}
 
 	/*** public Entity Component management ***/
 
 	public <T extends Component> T addComponent(Class<T> componentType, Entity entity) {
-		if (getComponent(componentType, entity) != null)
-			throw new UnsupportedOperationException("Component of that type has been added to this entity already.");
-
-		// find the component-to-entity list for this component type, or create it if it doesn't exist yet
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null) {
-			componentEntities = new ObjectMap<Entity, Component>();
-			componentStore.put(componentType, componentEntities);
-		}
+		if (!isValid(entity))
+			throw new IllegalArgumentException("entity is not a valid entity in this EntityManager.");
 
-		T component = Pools.obtain(componentType);
+		ComponentType type = getComponentType(componentType, true);
+		if (entity.archetype.hasType(type.id))
+			throw new UnsupportedOperationException("Component of that type has been added to this entity already.");
 
-		componentEntities.put(entity, component);
-		return componentType.cast(component);
+		T component = obtainComponent(componentType);
+		attachComponent(type, entity, component);
+		return component;
 	}
 
 	public <T extends Component> T getComponent(Class<T> componentType, Entity entity) {
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null)
+		ComponentType type = getComponentType(componentType, false);
+		if (type == null)
 			return null;
 
-		Component existing = componentEntities.get(entity);
-		if (existing == null)
+		Archetype archetype = entity.archetype;
+		if (archetype == null)
+			return null;
+
+		int column = archetype.getColumnIndex(type.id);
+		if (column == -1)
 			return null;
 		else
-			return componentType.cast(existing);
+			return componentType.cast(archetype.columns[column][entity.row]);
 	}
 
 	public <T extends Component> void removeComponent(Class<T> componentType, Entity entity) {
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null)
+		ComponentType type = getComponentType(componentType, false);
+		if (type == null)
 			return;
 
-		Component component = componentEntities.remove(entity);
-		if (component != null)
-			Pools.free(component);
+		Archetype source = entity.archetype;
+		if (source == null)
+			return;
+
+		int column = source.getColumnIndex(type.id);
+		if (column == -1)
+			return;
+
+		Component component = source.columns[column][entity.row];
+		moveEntity(entity, getArchetypeWithout(source, type.id));
+		freeComponent(component);
+		if (componentType == EntityPresetComponent.class)
+			presetIndex.remove(entity.index);
+		if (changes != null)
+			changes.markEntity(entity.index);
 	}
 
 	public <T extends Component> boolean hasComponent(Class<T> componentType, Entity entity) {
-		ObjectMap<Entity, Component> componentEntities = componentStore.get(componentType);
-		if (componentEntities == null)
+		ComponentType type = getComponentType(componentType, false);
+		if (type == null)
 			return false;
 
-		return componentEntities.containsKey(entity);
+		Archetype archetype = entity.archetype;
+		if (archetype == null)
+			return false;
+		else
+			return archetype.hasType(type.id);
+	}
+
+	public <T extends Component> T getComponent(Class<T> componentType, long handle) {
+		Entity entity = get(handle);
+		if (entity == null)
+			return null;
+		else
+			return getComponent(componentType, entity);
+	}
+
+	public <T extends Component> boolean hasComponent(Class<T> componentType, long handle) {
+		Entity entity = get(handle);
+		if (entity == null)
+			return false;
+		else
+			return hasComponent(componentType, entity);
 	}
 
 	public void getAllComponentsFor(Entity entity, Array<Component> list) {
 		if (list == null)
 			throw new IllegalArgumentException("list can not be null.");
 
-		for (ObjectMap.Entry<Class<? extends Component>, ObjectMap<Entity, Component>> i : componentStore.entries()) {
-			ObjectMap<Entity, Component> entitiesWithComponent = i.value;
-			Component component = entitiesWithComponent.get(entity);
-			if (component != null)
-				list.add(component);
-		}
+		Archetype archetype = entity.archetype;
+		if (archetype == null)
+			return;
+
+		for (int i = 0; i < archetype.columns.length; ++i)
+			list.add(archetype.columns[i][entity.row]);
 	}
 
 	/*** global component management ***/
@@ -261,7 +529,7 @@ public class EntityManager implements Disposable {
 		if (getGlobal(componentType) != null)
 			throw new UnsupportedOperationException("Global component of that type has been added already.");
 
-		T component = Pools.obtain(componentType);
+		T component = obtainComponent(componentType);
 
 		globalComponents.put(componentType, component);
 		return componentType.cast(component);
@@ -277,7 +545,8 @@ public class EntityManager implements Disposable {
 
 	public <T extends Component> void removeGlobal(Class<T> componentType) {
 		Component component = globalComponents.remove(componentType);
-		Pools.free(component);
+		if (component != null)
+			freeComponent(component);
 	}
 
 	public <T extends Component> boolean hasGlobal(Class<T> componentType) {
@@ -286,10 +555,140 @@ public class EntityManager implements Disposable {
 
 	public void removeAllGlobals() {
 		for (ObjectMap.Entry<Class<? extends Component>, Component> i : globalComponents.entries())
-			Pools.free(i.value);
+			freeComponent(i.value);
 		globalComponents.clear();
 	}
 
+	/*** component pool management ***/
+
+	// maximum number of free components kept around for types whose pool hasn't been created yet (defaults to 100, same
+	// as libgdx's Pools)
+	public void setDefaultComponentPoolMax(int max) {
+		if (max < 0)
+			throw new IllegalArgumentException("max can not be negative.");
+
+		synchronized (componentPoolLock) {
+			defaultComponentPoolMax = max;
+		}
+	}
+
+	public <T extends Component> void setComponentPoolMax(Class<T> componentType, int max) {
+		if (max < 0)
+			throw new IllegalArgumentException("max can not be negative.");
+
+		synchronized (componentPoolLock) {
+			getComponentPool(componentType).setMax(max);
+		}
+	}
+
+	// fills the pool for the given component type up to count free components, raising its max to count if needed
+	public <T extends Component> void prewarm(Class<T> componentType, int count) {
+		synchronized (componentPoolLock) {
+			getComponentPool(componentType).prewarm(count);
+		}
+	}
+
+	// returns the pool for the given component type, so its stats can be monitored
+	public <T extends Component> ComponentPool<T> getComponentPoolFor(Class<T> componentType) {
+		synchronized (componentPoolLock) {
+			return getComponentPool(componentType);
+		}
+	}
+
+	public void getAllComponentPools(Array<ComponentPool<?>> outPools) {
+		if (outPools == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the pools in.");
+
+		synchronized (componentPoolLock) {
+			for (ComponentPool<?> pool : componentPools.values())
+				outPools.add(pool);
+		}
+	}
+
+	public void resetComponentPoolStats() {
+		synchronized (componentPoolLock) {
+			for (ComponentPool<?> pool : componentPools.values())
+				pool.resetStats();
+		}
+	}
+
+	/*** change tracking ***/
+
+	/**
+	 * Turns tracking of changed entities and components on or off (it is off by default). While on, created and
+	 * removed entities and added and removed components are tracked automatically. Changes made to a component's
+	 * fields are not noticed automatically, they need to be reported with markChanged(). The tracked changes are
+	 * what EntityDeltaWriter writes out.
+	 */
+	public void setChangeTracking(boolean enabled) {
+		if (enabled && changes == null)
+			changes = new EntityChangeTracker();
+		else if (!enabled)
+			changes = null;
+	}
+
+	public boolean isTrackingChanges() {
+		return changes != null;
+	}
+
+	public <T extends Component> void markChanged(Class<T> componentType, Entity entity) {
+		if (changes == null || !isValid(entity))
+			return;
+
+		ComponentType type = getComponentType(componentType, false);
+		if (type != null && entity.archetype.hasType(type.id))
+			changes.markComponent(entity.index, type.id);
+	}
+
+	// marks every component the entity has as changed
+	public void markChanged(Entity entity) {
+		if (changes != null && isValid(entity))
+			changes.markAllComponents(entity.index);
+	}
+
+	public boolean hasChanges() {
+		return changes != null && !changes.isEmpty();
+	}
+
+	public void clearChanges() {
+		if (changes != null)
+			changes.clear();
+	}
+
+	/*** instrumentation ***/
+
+	public void setInstrumentation(boolean enabled) {
+		setInstrumentation(enabled, 120);
+	}
+
+	/**
+	 * Turns timing of every ComponentSystem's (and this EntityManager's own) update/render calls on or off. The
+	 * timings keep the last windowSize calls each. While turned off (the default), nothing is timed or recorded.
+	 * Turning it on while already on with a different windowSize starts over with new timings.
+	 */
+	public void setInstrumentation(boolean enabled, int windowSize) {
+		if (enabled && windowSize < 1)
+			throw new IllegalArgumentException("windowSize must be at least 1.");
+
+		if (stats != null && (!enabled || stats.windowSize != windowSize)) {
+			stats.detachSystems();
+			stats = null;
+		}
+		if (enabled && stats == null) {
+			stats = new EntityManagerStats(this, windowSize);
+			stats.syncSystems();
+		}
+	}
+
+	public boolean isInstrumented() {
+		return stats != null;
+	}
+
+	// returns null if instrumentation is turned off
+	public EntityManagerStats getStats() {
+		return stats;
+	}
+
 	/*** events ***/
 
 	public void onAppResume() {
@@ -308,21 +707,80 @@ public class EntityManager implements Disposable {
 	}
 
 	public void onRender(float interpolation) {
-		for (int i = 0; i < componentSystems.size; ++i)
-			componentSystems.get(i).onRender(interpolation);
+		if (stats == null) {
+			for (int i = 0; i < componentSystems.size; ++i)
+				componentSystems.get(i).onRender(interpolation);
+			return;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < componentSystems.size; ++i) {
+			ComponentSystem system = componentSystems.get(i);
+			long systemStart = System.nanoTime();
+			system.onRender(interpolation);
+			system.stats.render.add(System.nanoTime() - systemStart);
+		}
+		stats.render.add(System.nanoTime() - start);
 	}
 
 	public void onUpdateGameState(float delta) {
+		long start = (stats != null ? System.nanoTime() : 0);
+
 		for (Entity i : getAllWith(InactiveComponent.class))
 			remove(i);
 
-		for (int i = 0; i < componentSystems.size; ++i)
-			componentSystems.get(i).onUpdateGameState(delta);
+		if (scheduler != null)
+			scheduler.run(delta);
+		else {
+			for (int i = 0; i < componentSystems.size; ++i)
+				updateGameState(componentSystems.get(i), delta);
+		}
+
+		if (stats == null)
+			commandBuffer.playback();
+		else {
+			long playbackStart = System.nanoTime();
+			commandBuffer.playback();
+			long end = System.nanoTime();
+			stats.commandPlayback.add(end - playbackStart);
+			stats.updateGameState.add(end - start);
+		}
 	}
 
 	public void onUpdateFrame(float delta) {
-		for (int i = 0; i < componentSystems.size; ++i)
-			componentSystems.get(i).onUpdateFrame(delta);
+		if (stats == null) {
+			for (int i = 0; i < componentSystems.size; ++i)
+				componentSystems.get(i).onUpdateFrame(delta);
+			return;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < componentSystems.size; ++i) {
+			ComponentSystem system = componentSystems.get(i);
+			long systemStart = System.nanoTime();
+			system.onUpdateFrame(delta);
+			system.stats.updateFrame.add(System.nanoTime() - systemStart);
+		}
+		stats.updateFrame.add(System.nanoTime() - start);
+	}
+
+	// can be called from any thread (by SystemScheduler). only the calling system's own stats are touched
+	static void updateGameState(ComponentSystem system, float delta) {
+		SystemStats stats = system.stats;
+		if (stats == null)
+			system.onUpdateGameState(delta);
+		else {
+			long start = System.nanoTime();
+			system.onUpdateGameState(delta);
+			stats.updateGameState.add(System.nanoTime() - start);
+		}
+	}
+
+	void onSubsystemsChanged() {
+		if (scheduler != null)
+			scheduler.isDirty = true;
+		if (stats != null)
+			stats.syncSystems();
 	}
 
 	/*** private Entity/Component management ***/
@@ -331,15 +789,226 @@ public class EntityManager implements Disposable {
 		if (entity == null)
 			throw new IllegalArgumentException("entity can not be null.");
 
-		for (ObjectMap.Entry<Class<? extends Component>, ObjectMap<Entity, Component>> i : componentStore.entries()) {
-			ObjectMap<Entity, Component> entitiesWithComponent = i.value;
-			Component component = entitiesWithComponent.get(entity);
-			if (component != null)
-				Pools.free(component);
-			entitiesWithComponent.remove(entity);
+		Archetype archetype = entity.archetype;
+		for (int i = 0; i < archetype.columns.length; ++i)
+			freeComponent(archetype.columns[i][entity.row]);
+	}
+
+	private void release(Entity entity) {
+		Archetype archetype = entity.archetype;
+		for (int i = 0; i < archetype.queries.size; ++i)
+			archetype.queries.items[i].remove(entity);
+
+		archetype.removeRow(entity.row);
+		entity.archetype = null;
+
+		int index = entity.index;
+		entities[index] = null;
+		presetIndex.remove(index);
+		++generations[index];
+		if (generations[index] == 0)
+			generations[index] = 1;
+		freeIndices.add(index);
+		--numEntities;
+		if (changes != null) {
+			changes.markEntity(index);
+			changes.isEntityTableChanged = true;
 		}
 	}
 
+	// pre-sizes storage for the given number of additional entities ending up in the given archetype
+	private void reserve(Archetype archetype, int additionalCount) {
+		ensureEntityCapacity(nextIndex + additionalCount);
+		archetype.ensureCapacity(archetype.size + additionalCount);
+		for (int i = 0; i < archetype.queries.size; ++i) {
+			EntityQuery query = archetype.queries.items[i];
+			query.ensureCapacity(query.size + additionalCount);
+		}
+	}
+
+	void ensureEntityCapacity(int capacity) {
+		if (capacity <= entities.length)
+			return;
+
+		int newCapacity = Math.max(capacity, (int)(entities.length * 1.75f));
+
+		Entity[] newEntities = new Entity[newCapacity];
+		System.arraycopy(entities, 0, newEntities, 0, entities.length);
+		entities = newEntities;
+
+		int[] newGenerations = new int[newCapacity];
+		System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+		generations = newGenerations;
+	}
+
+	// these can be called from any thread, e.g. while recording into an EntityCommandBuffer
+
+	<T extends Component> T obtainComponent(Class<T> componentType) {
+		synchronized (componentPoolLock) {
+			return getComponentPool(componentType).obtain();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	void freeComponent(Component component) {
+		synchronized (componentPoolLock) {
+			ComponentPool<Component> pool = (ComponentPool<Component>)getComponentPool(component.getClass());
+			pool.free(component);
+		}
+	}
+
+	// obtains count components of the given type at once into the given array
+	void obtainComponents(Class<? extends Component> componentType, Component[] out, int offset, int count) {
+		synchronized (componentPoolLock) {
+			ComponentPool<? extends Component> pool = getComponentPool(componentType);
+			for (int i = 0; i < count; ++i)
+				out[offset + i] = pool.obtain();
+		}
+	}
+
+	// must be called while holding componentPoolLock
+	@SuppressWarnings("unchecked")
+	private <T extends Component> ComponentPool<T> getComponentPool(Class<T> componentType) {
+		ComponentPool<?> pool = componentPools.get(componentType);
+		if (pool == null) {
+			pool = new ComponentPool<T>(componentType, defaultComponentPoolMax);
+			componentPools.put(componentType, pool);
+		}
+		return (ComponentPool<T>)pool;
+	}
+
+	// brings the preset index up to date for an entity whose EntityPresetComponent was filled in some other way
+	// than by addUsingPreset(), e.g. when restoring a snapshot
+	void updatePresetIndex(Entity entity) {
+		EntityPresetComponent presetComponent = getComponent(EntityPresetComponent.class, entity);
+		if (presetComponent == null || presetComponent.presetType == null)
+			presetIndex.remove(entity.index);
+		else if (presetIndex.getType(entity.index) != presetComponent.presetType)
+			presetIndex.add(entity, presetComponent.presetType);
+	}
+
+	void attachComponent(ComponentType type, Entity entity, Component component) {
+		Archetype destination = getArchetypeWith(entity.archetype, type.id);
+		int row = moveEntity(entity, destination);
+		destination.columns[destination.getColumnIndex(type.id)][row] = component;
+		if (changes != null)
+			changes.markComponent(entity.index, type.id);
+	}
+
+	/*** component type / archetype management ***/
+
+	ComponentType getComponentType(Class<? extends Component> componentType, boolean createIfMissing) {
+		ComponentType type = componentTypes.get(componentType);
+		if (type == null && createIfMissing) {
+			type = new ComponentType(componentTypesById.size, componentType);
+			componentTypes.put(componentType, type);
+			componentTypesById.add(type);
+		}
+		return type;
+	}
+
+	private Bits getComponentTypeMask(Array<Class<? extends Component>> componentTypes) {
+		Bits mask = new Bits();
+		for (int i = 0; i < componentTypes.size; ++i)
+			mask.set(getComponentType(componentTypes.get(i), true).id);
+		return mask;
+	}
+
+	// clears out the entity index table so that a snapshot can restore it exactly. there must be no entities
+	void resetEntityTable(int nextIndex) {
+		if (numEntities != 0)
+			throw new IllegalStateException("All entities must be removed first.");
+
+		ensureEntityCapacity(nextIndex);
+		Arrays.fill(entities, null);
+		Arrays.fill(generations, 0);
+		freeIndices.clear();
+		this.nextIndex = nextIndex;
+		if (changes != null)
+			changes.isEntityTableChanged = true;
+	}
+
+	// types must be sorted
+	Archetype getArchetype(int[] types) {
+		Bits mask = Archetype.toMask(types);
+		Archetype archetype = archetypesByMask.get(mask);
+		if (archetype != null)
+			return archetype;
+
+		archetype = new Archetype(this, types);
+		archetypes.add(archetype);
+		archetypesByMask.put(archetype.mask, archetype);
+		for (int i = 0; i < types.length; ++i)
+			componentTypesById.items[types[i]].archetypes.add(archetype);
+
+		for (int i = 0; i < queries.size; ++i) {
+			if (queries.items[i].matches(archetype))
+				archetype.queries.add(queries.items[i]);
+		}
+
+		return archetype;
+	}
+
+	private Archetype getArchetypeWith(Archetype source, int typeId) {
+		Archetype destination = source.addTransitions.get(typeId);
+		if (destination == null) {
+			int[] types = new int[source.types.length + 1];
+			System.arraycopy(source.types, 0, types, 0, source.types.length);
+			types[types.length - 1] = typeId;
+			Arrays.sort(types);
+
+			destination = getArchetype(types);
+			source.addTransitions.put(typeId, destination);
+			destination.removeTransitions.put(typeId, source);
+		}
+		return destination;
+	}
+
+	private Archetype getArchetypeWithout(Archetype source, int typeId) {
+		Archetype destination = source.removeTransitions.get(typeId);
+		if (destination == null) {
+			int[] types = new int[source.types.length - 1];
+			int n = 0;
+			for (int i = 0; i < source.types.length; ++i) {
+				if (source.types[i] != typeId)
+					types[n++] = source.types[i];
+			}
+
+			destination = getArchetype(types);
+			source.removeTransitions.put(typeId, destination);
+			destination.addTransitions.put(typeId, source);
+		}
+		return destination;
+	}
+
+	// moves an entity and whichever of its components are also present in the destination archetype. returns the
+	// entity's new row in the destination archetype
+	private int moveEntity(Entity entity, Archetype destination) {
+		Archetype source = entity.archetype;
+		int sourceRow = entity.row;
+		int destinationRow = destination.add(entity);
+
+		for (int i = 0; i < source.types.length; ++i) {
+			int column = destination.getColumnIndex(source.types[i]);
+			if (column != -1)
+				destination.columns[column][destinationRow] = source.columns[i][sourceRow];
+		}
+		source.removeRow(sourceRow);
+
+		for (int i = 0; i < source.queries.size; ++i) {
+			EntityQuery query = source.queries.items[i];
+			if (!query.matches(destination))
+				query.remove(entity);
+		}
+		for (int i = 0; i < destination.queries.size; ++i) {
+			EntityQuery query = destination.queries.items[i];
+			if (!query.matches(source))
+				query.add(entity);
+		}
+
+		return destinationRow;
+	}
+
 	private <T extends ComponentSystem> int getSubsystemIndex(Class<T> componentSystemType) {
 		for (int i = 0; i < componentSystems.size; ++i) {
 			if (componentSystems.get(i).getClass() == componentSystemType)
@@ -350,9 +1019,15 @@ public class EntityManager implements Disposable {
 
 	@Override
 	public void dispose() {
+		commandBuffer.clear();
 		removeAll();
 		removeAllGlobals();
 		removeAllPresets();
 		removeAllSubsystems();
+
+		synchronized (componentPoolLock) {
+			for (ComponentPool<?> pool : componentPools.values())
+				pool.clear();
+		}
 	}
 }
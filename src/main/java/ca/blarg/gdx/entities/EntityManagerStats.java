@@ -0,0 +1,179 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/**
+ * Timings and counts for an EntityManager, available from EntityManager.getStats() while instrumentation is turned
+ * on (see EntityManager.setInstrumentation()). Timings cover each ComponentSystem's update/render calls as well as
+ * each of the EntityManager's own update/render calls as a whole. Entity counts and component pool occupancy are
+ * read live whenever they are asked for.
+ */
+public class EntityManagerStats {
+	public final EntityManager entityManager;
+
+	public final TimingStats updateGameState;
+	public final TimingStats updateFrame;
+	public final TimingStats render;
+	public final TimingStats commandPlayback;
+
+	final int windowSize;
+	final Array<SystemStats> systemStats;
+	final Array<ComponentPool<?>> pools;
+
+	EntityManagerStats(EntityManager entityManager, int windowSize) {
+		this.entityManager = entityManager;
+		this.windowSize = windowSize;
+		updateGameState = new TimingStats(windowSize);
+		updateFrame = new TimingStats(windowSize);
+		render = new TimingStats(windowSize);
+		commandPlayback = new TimingStats(windowSize);
+		systemStats = new Array<SystemStats>(true, 16, SystemStats.class);
+		pools = new Array<ComponentPool<?>>();
+	}
+
+	/*** ComponentSystem timings ***/
+
+	public void getAllSystemStats(Array<SystemStats> outStats) {
+		if (outStats == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the system stats in.");
+
+		outStats.addAll(systemStats);
+	}
+
+	public <T extends ComponentSystem> SystemStats getSystemStats(Class<T> componentSystemType) {
+		for (int i = 0; i < systemStats.size; ++i) {
+			if (systemStats.items[i].system.getClass() == componentSystemType)
+				return systemStats.items[i];
+		}
+		return null;
+	}
+
+	/*** entity counts ***/
+
+	public <T extends Component> int getEntityCount(Class<T> componentType) {
+		ComponentType type = entityManager.getComponentType(componentType, false);
+		if (type == null)
+			return 0;
+		else
+			return getEntityCount(type);
+	}
+
+	public void getEntityCounts(ObjectIntMap<Class<? extends Component>> outCounts) {
+		if (outCounts == null)
+			throw new IllegalArgumentException("Must supply an ObjectIntMap object to store the entity counts in.");
+
+		for (int i = 0; i < entityManager.componentTypesById.size; ++i) {
+			ComponentType type = entityManager.componentTypesById.items[i];
+			outCounts.put(type.type, getEntityCount(type));
+		}
+	}
+
+	public int getNumArchetypes() {
+		return entityManager.archetypes.size;
+	}
+
+	/*** dumping ***/
+
+	public void reset() {
+		updateGameState.reset();
+		updateFrame.reset();
+		render.reset();
+		commandPlayback.reset();
+		for (int i = 0; i < systemStats.size; ++i)
+			systemStats.items[i].reset();
+		entityManager.resetComponentPoolStats();
+	}
+
+	public void dump(StringBuilder sb) {
+		sb.append("entities: ").append(entityManager.getNumEntities())
+		  .append(", archetypes: ").append(entityManager.archetypes.size).append('\n');
+
+		sb.append(String.format("%-40s %10s %10s %10s %10s %10s\n", "timings (us)", "last", "min", "avg", "max", "p99"));
+		dumpTimings(sb, "EntityManager.onUpdateGameState", updateGameState);
+		dumpTimings(sb, "EntityManager.onUpdateFrame", updateFrame);
+		dumpTimings(sb, "EntityManager.onRender", render);
+		dumpTimings(sb, "EntityManager.commandBuffer.playback", commandPlayback);
+		for (int i = 0; i < systemStats.size; ++i) {
+			SystemStats stats = systemStats.items[i];
+			String name = stats.system.getClass().getSimpleName();
+			dumpTimings(sb, name + ".onUpdateGameState", stats.updateGameState);
+			dumpTimings(sb, name + ".onUpdateFrame", stats.updateFrame);
+			dumpTimings(sb, name + ".onRender", stats.render);
+		}
+
+		sb.append(String.format("%-40s %10s\n", "component type", "entities"));
+		for (int i = 0; i < entityManager.componentTypesById.size; ++i) {
+			ComponentType type = entityManager.componentTypesById.items[i];
+			sb.append(String.format("%-40s %10d\n", type.type.getSimpleName(), getEntityCount(type)));
+		}
+
+		sb.append(String.format("%-40s %10s %10s %10s %10s %10s\n", "component pool", "free", "peak", "max", "misses", "discarded"));
+		pools.clear();
+		entityManager.getAllComponentPools(pools);
+		for (int i = 0; i < pools.size; ++i) {
+			ComponentPool<?> pool = pools.get(i);
+			sb.append(String.format("%-40s %10d %10d %10s %10d %10d\n",
+			                        pool.type.getSimpleName(), pool.getNumFree(), pool.getPeakFree(),
+			                        pool.getMax() == Integer.MAX_VALUE ? "-" : String.valueOf(pool.getMax()),
+			                        pool.getNumMisses(), pool.getNumDiscarded()));
+		}
+		pools.clear();
+	}
+
+	public void log() {
+		String[] lines = toString().split("\n");
+		for (int i = 0; i < lines.length; ++i)
+			Gdx.app.log("EntityManagerStats", lines[i]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		dump(sb);
+		return sb.toString();
+	}
+
+	/*** package-private ***/
+
+	// makes sure every registered ComponentSystem (and only those) has stats, in registration order
+	void syncSystems() {
+		Array<ComponentSystem> systems = entityManager.componentSystems;
+		for (int i = 0; i < systemStats.size; ++i) {
+			SystemStats stats = systemStats.items[i];
+			if (!systems.contains(stats.system, true))
+				stats.system.stats = null;
+		}
+
+		systemStats.clear();
+		for (int i = 0; i < systems.size; ++i) {
+			ComponentSystem system = systems.get(i);
+			if (system.stats == null)
+				system.stats = new SystemStats(system, windowSize);
+			systemStats.add(system.stats);
+		}
+	}
+
+	void detachSystems() {
+		for (int i = 0; i < systemStats.size; ++i)
+			systemStats.items[i].system.stats = null;
+		systemStats.clear();
+	}
+
+	private int getEntityCount(ComponentType type) {
+		int count = 0;
+		for (int i = 0; i < type.archetypes.size; ++i)
+			count += type.archetypes.items[i].size;
+		return count;
+	}
+
+	private static void dumpTimings(StringBuilder sb, String name, TimingStats stats) {
+		if (stats.getNumSamples() == 0)
+			return;
+
+		sb.append(String.format("%-40s %10.1f %10.1f %10.1f %10.1f %10.1f\n", name,
+		                        stats.getLast() / 1000.0f, stats.getMin() / 1000.0f, stats.getAverage() / 1000.0f,
+		                        stats.getMax() / 1000.0f, stats.getP99() / 1000.0f));
+	}
+}
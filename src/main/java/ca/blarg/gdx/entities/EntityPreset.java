@@ -1,5 +1,7 @@
 package ca.blarg.gdx.entities;
 
+import com.badlogic.gdx.utils.Array;
+
 public abstract class EntityPreset {
 	public interface CreationArgs {
 	}
@@ -14,4 +16,11 @@ public abstract class EntityPreset {
 	}
 
 	public abstract Entity create(CreationArgs args);
+
+	// called by EntityManager.addUsingPreset() when adding many entities at once. presets which create lots of
+	// entities (particles, projectiles, etc) can override this to use EntityManager.add(count, ...) instead
+	public void create(CreationArgs args, int count, Array<Entity> outEntities) {
+		for (int i = 0; i < count; ++i)
+			outEntities.add(create(args));
+	}
 }
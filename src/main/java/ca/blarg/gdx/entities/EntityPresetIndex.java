@@ -0,0 +1,103 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+// keeps track of which entities were created with each EntityPreset type, so that all entities created with a
+// given preset type (or any subclass of it) can be found without looking at every entity with an
+// EntityPresetComponent. lists for each exact preset type are kept, plus a cache of which of those lists match
+// each preset type that has been looked up
+
+final class EntityPresetIndex {
+	final ObjectMap<Class<?>, Array<Entity>> entitiesByType;
+	final ObjectMap<Class<?>, Array<Array<Entity>>> matchingLists;
+
+	// indexed by entity index
+	Class<?>[] types;
+	int[] slots;
+
+	EntityPresetIndex() {
+		entitiesByType = new ObjectMap<Class<?>, Array<Entity>>();
+		matchingLists = new ObjectMap<Class<?>, Array<Array<Entity>>>();
+		types = new Class<?>[64];
+		slots = new int[64];
+	}
+
+	void add(Entity entity, Class<? extends EntityPreset> presetType) {
+		int index = entity.index;
+		ensureCapacity(index + 1);
+		if (types[index] != null)
+			remove(index);
+
+		Array<Entity> entities = entitiesByType.get(presetType);
+		if (entities == null) {
+			entities = new Array<Entity>(false, 16, Entity.class);
+			entitiesByType.put(presetType, entities);
+
+			// a new preset type might be a subclass of any type looked up already
+			for (ObjectMap.Entry<Class<?>, Array<Array<Entity>>> i : matchingLists.entries()) {
+				if (i.key.isAssignableFrom(presetType))
+					i.value.add(entities);
+			}
+		}
+
+		types[index] = presetType;
+		slots[index] = entities.size;
+		entities.add(entity);
+	}
+
+	void remove(int index) {
+		if (index >= types.length || types[index] == null)
+			return;
+
+		Array<Entity> entities = entitiesByType.get(types[index]);
+		int slot = slots[index];
+		Entity last = entities.pop();
+		if (slot < entities.size) {
+			entities.items[slot] = last;
+			slots[last.index] = slot;
+		}
+		types[index] = null;
+	}
+
+	Class<?> getType(int index) {
+		if (index >= types.length)
+			return null;
+		else
+			return types[index];
+	}
+
+	void getAll(Class<? extends EntityPreset> presetType, Array<Entity> outEntities) {
+		Array<Array<Entity>> lists = matchingLists.get(presetType);
+		if (lists == null) {
+			lists = new Array<Array<Entity>>();
+			for (ObjectMap.Entry<Class<?>, Array<Entity>> i : entitiesByType.entries()) {
+				if (presetType.isAssignableFrom(i.key))
+					lists.add(i.value);
+			}
+			matchingLists.put(presetType, lists);
+		}
+
+		for (int i = 0; i < lists.size; ++i) {
+			Array<Entity> entities = lists.get(i);
+			outEntities.ensureCapacity(entities.size);
+			for (int j = 0; j < entities.size; ++j)
+				outEntities.add(entities.items[j]);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= types.length)
+			return;
+
+		int newCapacity = Math.max(capacity, (int)(types.length * 1.75f));
+
+		Class<?>[] newTypes = new Class<?>[newCapacity];
+		System.arraycopy(types, 0, newTypes, 0, types.length);
+		types = newTypes;
+
+		int[] newSlots = new int[newCapacity];
+		System.arraycopy(slots, 0, newSlots, 0, slots.length);
+		slots = newSlots;
+	}
+}
@@ -0,0 +1,110 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Bits;
+
+/**
+ * A flat, always up to date list of all the entities matching an EntityFamily. Obtain one once through
+ * EntityManager.getQuery() and then iterate over it each update without any allocation or per-entity component
+ * checks:
+ *
+ *    for (int i = query.size() - 1; i >= 0; --i) {
+ *        Entity entity = query.get(i);
+ *        ...
+ *    }
+ *
+ * Iterating in reverse like this keeps it safe to remove the current entity (or components from it) mid-loop.
+ */
+public final class EntityQuery {
+	public final EntityManager entityManager;
+
+	final Bits requiredTypes;
+	final Bits excludedTypes;
+	Entity[] entities;
+	int size;
+	int[] positions;            // entity index -> index into entities, or -1
+
+	EntityQuery(EntityManager entityManager, Bits requiredTypes, Bits excludedTypes) {
+		this.entityManager = entityManager;
+		this.requiredTypes = requiredTypes;
+		this.excludedTypes = excludedTypes;
+		entities = new Entity[16];
+		positions = new int[0];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Entity get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index out of bounds: " + index);
+
+		return entities[index];
+	}
+
+	/**
+	 * Returns the backing array of matching entities. Only indices 0 to size()-1 are valid.
+	 */
+	public Entity[] getEntities() {
+		return entities;
+	}
+
+	public boolean contains(Entity entity) {
+		if (entity == null || entity.entityManager != entityManager)
+			return false;
+		if (entity.index < 0 || entity.index >= positions.length)
+			return false;
+		else
+			return positions[entity.index] != -1;
+	}
+
+	/*** package-private membership management ***/
+
+	boolean matches(Archetype archetype) {
+		return archetype.mask.containsAll(requiredTypes) && !archetype.mask.intersects(excludedTypes);
+	}
+
+	boolean isFor(Bits requiredTypes, Bits excludedTypes) {
+		return this.requiredTypes.equals(requiredTypes) && this.excludedTypes.equals(excludedTypes);
+	}
+
+	void ensureCapacity(int capacity) {
+		if (capacity <= entities.length)
+			return;
+
+		Entity[] newEntities = new Entity[Math.max(capacity, (int)(entities.length * 1.75f))];
+		System.arraycopy(entities, 0, newEntities, 0, size);
+		entities = newEntities;
+	}
+
+	void add(Entity entity) {
+		ensureCapacity(size + 1);
+
+		int index = entity.index;
+		if (index >= positions.length) {
+			int[] newPositions = new int[Math.max(index + 1, (int)(positions.length * 1.75f))];
+			System.arraycopy(positions, 0, newPositions, 0, positions.length);
+			for (int i = positions.length; i < newPositions.length; ++i)
+				newPositions[i] = -1;
+			positions = newPositions;
+		}
+
+		entities[size] = entity;
+		positions[index] = size;
+		++size;
+	}
+
+	void remove(Entity entity) {
+		int position = positions[entity.index];
+		int last = size - 1;
+		if (position != last) {
+			Entity moved = entities[last];
+			entities[position] = moved;
+			positions[moved.index] = position;
+		}
+
+		entities[last] = null;
+		positions[entity.index] = -1;
+		--size;
+	}
+}
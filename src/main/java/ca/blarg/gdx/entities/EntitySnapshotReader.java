@@ -0,0 +1,159 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.entities.systemcomponents.EntityPresetComponent;
+import ca.blarg.gdx.io.ByteBufferInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a snapshot written by EntitySnapshotWriter back into an EntityManager, replacing all of its current entities
+ * and global components. Components are obtained from the EntityManager's pools and filled in directly while
+ * reading. Registered ComponentSystems, EntityPresets and queries are left alone (queries are updated to match the
+ * restored entities).
+ */
+public class EntitySnapshotReader {
+	final Array<ComponentSchema> schemas;
+	final Array<Archetype> archetypes;
+	final IntArray firstRows;
+	final Array<int[]> columnOrders;   // per archetype, which column each of the snapshot's columns goes into
+
+	public EntitySnapshotReader() {
+		schemas = new Array<ComponentSchema>();
+		archetypes = new Array<Archetype>();
+		firstRows = new IntArray();
+		columnOrders = new Array<int[]>();
+	}
+
+	public void read(EntityManager entityManager, FileHandle file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(file.read()));
+			read(entityManager, in);
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error reading entity snapshot: " + file, e);
+		} finally {
+			StreamUtils.closeQuietly(in);
+		}
+	}
+
+	public void read(EntityManager entityManager, ByteBuffer buffer) {
+		try {
+			read(entityManager, new DataInputStream(new ByteBufferInputStream(buffer)));
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error reading entity snapshot.", e);
+		}
+	}
+
+	public void read(EntityManager entityManager, DataInput in) throws IOException {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+
+		if (in.readInt() != EntitySnapshotWriter.MAGIC)
+			throw new IOException("Not an entity snapshot.");
+		short version = in.readShort();
+		if (version != EntitySnapshotWriter.VERSION)
+			throw new IOException("Unsupported entity snapshot version: " + version);
+
+		try {
+			int numTypes = in.readShort();
+			for (int i = 0; i < numTypes; ++i)
+				schemas.add(ComponentSchema.readHeader(in));
+
+			entityManager.removeAll();
+			entityManager.removeAllGlobals();
+
+			readEntityTable(entityManager, in);
+			readArchetypes(entityManager, in);
+			readGlobals(entityManager, in);
+		} finally {
+			schemas.clear();
+			archetypes.clear();
+			firstRows.clear();
+			columnOrders.clear();
+		}
+	}
+
+	/*** sections ***/
+
+	static void readEntityTable(EntityManager entityManager, DataInput in) throws IOException {
+		int nextIndex = in.readInt();
+		entityManager.resetEntityTable(nextIndex);
+		for (int i = 0; i < nextIndex; ++i)
+			entityManager.generations[i] = in.readInt();
+
+		int numFreeIndices = in.readInt();
+		entityManager.freeIndices.ensureCapacity(numFreeIndices);
+		for (int i = 0; i < numFreeIndices; ++i)
+			entityManager.freeIndices.add(in.readInt());
+	}
+
+	private void readArchetypes(EntityManager entityManager, DataInput in) throws IOException {
+		// create every entity first, directly in its final archetype, then fill in all the components
+		int numArchetypes = in.readInt();
+		for (int i = 0; i < numArchetypes; ++i) {
+			int numTypes = in.readShort();
+			int[] snapshotTypes = new int[numTypes];
+			for (int j = 0; j < numTypes; ++j)
+				snapshotTypes[j] = getTypeId(entityManager, in.readShort());
+			int[] types = Arrays.copyOf(snapshotTypes, numTypes);
+			Arrays.sort(types);
+
+			Archetype archetype = entityManager.getArchetype(types);
+			int[] columnOrder = new int[numTypes];
+			for (int j = 0; j < numTypes; ++j)
+				columnOrder[j] = archetype.getColumnIndex(snapshotTypes[j]);
+			columnOrders.add(columnOrder);
+
+			int count = in.readInt();
+			archetype.ensureCapacity(archetype.size + count);
+			archetypes.add(archetype);
+			firstRows.add(archetype.size);
+
+			for (int j = 0; j < count; ++j)
+				entityManager.registerAt(new Entity(entityManager), in.readInt(), archetype);
+		}
+
+		for (int i = 0; i < archetypes.size; ++i) {
+			Archetype archetype = archetypes.get(i);
+			int firstRow = firstRows.get(i);
+			int[] columnOrder = columnOrders.get(i);
+			for (int j = 0; j < columnOrder.length; ++j) {
+				int columnIndex = columnOrder[j];
+				Class<? extends Component> type = entityManager.componentTypesById.items[archetype.types[columnIndex]].type;
+				ComponentSchema schema = ComponentSchema.get(type);
+				Component[] column = archetype.columns[columnIndex];
+				entityManager.obtainComponents(type, column, firstRow, archetype.size - firstRow);
+				for (int row = firstRow; row < archetype.size; ++row)
+					schema.read(column[row], in, entityManager);
+			}
+
+			if (archetype.has(EntityPresetComponent.class)) {
+				for (int row = firstRow; row < archetype.size; ++row)
+					entityManager.updatePresetIndex(archetype.entities[row]);
+			}
+		}
+	}
+
+	private void readGlobals(EntityManager entityManager, DataInput in) throws IOException {
+		int numGlobals = in.readShort();
+		for (int i = 0; i < numGlobals; ++i) {
+			ComponentSchema schema = schemas.get(in.readShort());
+			Component component = entityManager.addGlobal(schema.type);
+			schema.read(component, in, entityManager);
+		}
+	}
+
+	private int getTypeId(EntityManager entityManager, int snapshotTypeIndex) {
+		return entityManager.getComponentType(schemas.get(snapshotTypeIndex).type, true).id;
+	}
+}
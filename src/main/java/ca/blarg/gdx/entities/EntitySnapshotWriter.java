@@ -0,0 +1,163 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.io.ByteBufferOutputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes all entities, their components and all global components of an EntityManager out in a compact binary
+ * format, straight from the EntityManager's own storage. Entity indices and generations are kept, so entity handles
+ * (and Entity fields in components) stay valid after the snapshot is read back in with EntitySnapshotReader.
+ *
+ * Component fields are written according to their type: primitives, String, enums, Class, Entity, Vector2, Vector3,
+ * Quaternion and Color are supported. Static and transient fields are skipped.
+ */
+public class EntitySnapshotWriter {
+	static final int MAGIC = 0x47455353;   // "GESS"
+	static final short VERSION = 1;
+
+	final ObjectIntMap<Class<? extends Component>> typeIndices;
+	final Array<ComponentSchema> schemas;
+	final Array<Archetype> archetypes;
+
+	public EntitySnapshotWriter() {
+		typeIndices = new ObjectIntMap<Class<? extends Component>>();
+		schemas = new Array<ComponentSchema>();
+		archetypes = new Array<Archetype>();
+	}
+
+	public void write(EntityManager entityManager, FileHandle file) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(file.write(false)));
+			write(entityManager, out);
+			out.flush();
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error writing entity snapshot: " + file, e);
+		} finally {
+			StreamUtils.closeQuietly(out);
+		}
+	}
+
+	public void write(EntityManager entityManager, ByteBuffer buffer) {
+		try {
+			write(entityManager, new DataOutputStream(new ByteBufferOutputStream(buffer)));
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error writing entity snapshot.", e);
+		}
+	}
+
+	public void write(EntityManager entityManager, DataOutput out) throws IOException {
+		if (entityManager == null)
+			throw new IllegalArgumentException("entityManager can not be null.");
+
+		collectTypes(entityManager);
+
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+
+		out.writeShort(schemas.size);
+		for (int i = 0; i < schemas.size; ++i)
+			schemas.get(i).writeHeader(out);
+
+		writeEntityTable(entityManager, out);
+		writeArchetypes(out);
+		writeGlobals(entityManager, out);
+
+		typeIndices.clear();
+		schemas.clear();
+		archetypes.clear();
+	}
+
+	/*** sections ***/
+
+	static void writeEntityTable(EntityManager entityManager, DataOutput out) throws IOException {
+		int nextIndex = entityManager.nextIndex;
+		out.writeInt(nextIndex);
+		for (int i = 0; i < nextIndex; ++i)
+			out.writeInt(entityManager.generations[i]);
+
+		int[] freeIndices = entityManager.freeIndices.items;
+		out.writeInt(entityManager.freeIndices.size);
+		for (int i = 0; i < entityManager.freeIndices.size; ++i)
+			out.writeInt(freeIndices[i]);
+	}
+
+	private void writeArchetypes(DataOutput out) throws IOException {
+		// all of the entities are listed first, so that Entity fields in components can be resolved on the
+		// reading side no matter which entity they point to
+		out.writeInt(archetypes.size);
+		for (int i = 0; i < archetypes.size; ++i) {
+			Archetype archetype = archetypes.get(i);
+			out.writeShort(archetype.types.length);
+			for (int j = 0; j < archetype.types.length; ++j)
+				out.writeShort(typeIndices.get(getType(archetype, j), -1));
+
+			out.writeInt(archetype.size);
+			for (int row = 0; row < archetype.size; ++row)
+				out.writeInt(archetype.entities[row].index);
+		}
+
+		for (int i = 0; i < archetypes.size; ++i) {
+			Archetype archetype = archetypes.get(i);
+			for (int j = 0; j < archetype.columns.length; ++j) {
+				ComponentSchema schema = schemas.get(typeIndices.get(getType(archetype, j), -1));
+				Component[] column = archetype.columns[j];
+				for (int row = 0; row < archetype.size; ++row)
+					schema.write(column[row], out);
+			}
+		}
+	}
+
+	private void writeGlobals(EntityManager entityManager, DataOutput out) throws IOException {
+		out.writeShort(entityManager.globalComponents.size);
+		for (ObjectMap.Entry<Class<? extends Component>, Component> i : entityManager.globalComponents.entries()) {
+			int typeIndex = typeIndices.get(i.key, -1);
+			out.writeShort(typeIndex);
+			schemas.get(typeIndex).write(i.value, out);
+		}
+	}
+
+	/*** type table ***/
+
+	private void collectTypes(EntityManager entityManager) {
+		typeIndices.clear();
+		schemas.clear();
+		archetypes.clear();
+
+		for (int i = 0; i < entityManager.archetypes.size; ++i) {
+			Archetype archetype = entityManager.archetypes.items[i];
+			if (archetype.size == 0)
+				continue;
+
+			archetypes.add(archetype);
+			for (int j = 0; j < archetype.types.length; ++j)
+				addType(getType(archetype, j));
+		}
+
+		for (ObjectMap.Entry<Class<? extends Component>, Component> i : entityManager.globalComponents.entries())
+			addType(i.key);
+	}
+
+	private void addType(Class<? extends Component> type) {
+		if (typeIndices.containsKey(type))
+			return;
+
+		typeIndices.put(type, schemas.size);
+		schemas.add(ComponentSchema.get(type));
+	}
+
+	private static Class<? extends Component> getType(Archetype archetype, int column) {
+		return archetype.entityManager.componentTypesById.items[archetype.types[column]].type;
+	}
+}
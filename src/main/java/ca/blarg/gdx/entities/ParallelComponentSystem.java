@@ -0,0 +1,221 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.events.EventManager;
+import com.badlogic.gdx.utils.Array;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ComponentSystem which updates every entity matching an EntityFamily independently via onUpdateEntity(),
+ * splitting the entities up into chunks which are processed across the EntityManager's update executor (see
+ * EntityManager.setUpdateExecutor()). Idle threads keep claiming the next unprocessed chunk until none are left, so
+ * uneven per-entity costs still balance out. Without an executor everything just runs on the calling thread.
+ *
+ * onUpdateEntity() may be called from several threads at once. It must only touch the entity it was given (plus its
+ * per-thread scratch object), and must not add/remove entities or components directly. Record those changes into the
+ * EntityCommandBuffer passed in instead. Each chunk gets its own buffer, and once every chunk has finished they are
+ * all moved, in chunk order, onto the end of entityManager.commandBuffer, so the end result doesn't depend on which
+ * thread processed what. They are applied along with everything else in entityManager.commandBuffer at the end of
+ * EntityManager.onUpdateGameState(), on the thread which owns the EntityManager, even when this system itself was
+ * run on another thread alongside other systems.
+ */
+public abstract class ParallelComponentSystem<S> extends ComponentSystem {
+	static final int DEFAULT_CHUNK_SIZE = 64;
+
+	public final EntityQuery query;
+	int chunkSize;
+
+	final Object lock;
+	final AtomicInteger nextChunk;
+	final Array<Worker> workers;
+	int numChunks;
+	float delta;
+	boolean isClosed;
+	int numActiveHelpers;
+	Throwable failure;
+
+	final Array<EntityCommandBuffer> chunkCommands;
+
+	public ParallelComponentSystem(EntityManager entityManager, EventManager eventManager, EntityFamily family) {
+		super(entityManager, eventManager);
+		query = entityManager.getQuery(family);
+		chunkSize = DEFAULT_CHUNK_SIZE;
+
+		lock = new Object();
+		nextChunk = new AtomicInteger();
+		workers = new Array<Worker>();
+		chunkCommands = new Array<EntityCommandBuffer>(true, 16, EntityCommandBuffer.class);
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be at least 1.");
+
+		this.chunkSize = chunkSize;
+	}
+
+	// called once per worker thread slot, the returned object is handed to every onUpdateEntity() call made by that
+	// worker and is reused across updates
+	protected abstract S newScratch();
+
+	protected abstract void onUpdateEntity(Entity entity, float delta, S scratch, EntityCommandBuffer commands);
+
+	@Override
+	public void onUpdateGameState(float delta) {
+		int size = query.size();
+		if (size > 0) {
+			numChunks = (size + chunkSize - 1) / chunkSize;
+			nextChunk.set(0);
+			this.delta = delta;
+
+			ExecutorService executor = entityManager.updateExecutor;
+			int numWorkers = (executor == null ? 1 : Math.min(entityManager.updateParallelism, numChunks));
+			ensureWorkers(numWorkers);
+			ensureChunkCommands(numChunks);
+
+			if (numWorkers == 1)
+				workers.get(0).processChunks();
+			else
+				runConcurrently(executor, numWorkers);
+		}
+
+		moveChunkCommands();
+	}
+
+	private void runConcurrently(ExecutorService executor, int numWorkers) {
+		synchronized (lock) {
+			isClosed = false;
+			numActiveHelpers = 0;
+			failure = null;
+		}
+
+		for (int i = 1; i < numWorkers; ++i) {
+			Worker worker = workers.get(i);
+
+			// a worker that never got started during an earlier update is still sitting in the executor's queue.
+			// submitting it again could have it running on two threads at once. it will join in with this update
+			// whenever it does get started, same as any other worker
+			synchronized (lock) {
+				if (worker.isQueued)
+					continue;
+				worker.isQueued = true;
+			}
+
+			try {
+				executor.execute(worker);
+			} catch (RuntimeException e) {
+				synchronized (lock) {
+					worker.isQueued = false;
+				}
+				throw e;
+			}
+		}
+
+		Throwable localFailure = null;
+		try {
+			workers.get(0).processChunks();
+		} catch (Throwable e) {
+			localFailure = e;
+		}
+
+		// once the calling thread runs out of chunks, any helpers that haven't started yet are no longer needed
+		// (they will return immediately). only wait for the ones still working on a chunk. this also means that
+		// a ParallelComponentSystem can safely be run on one of the executor's own threads
+		boolean interrupted = false;
+		synchronized (lock) {
+			isClosed = true;
+			while (numActiveHelpers > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (localFailure == null)
+				localFailure = failure;
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (localFailure != null) {
+			if (localFailure instanceof RuntimeException)
+				throw (RuntimeException)localFailure;
+			else if (localFailure instanceof Error)
+				throw (Error)localFailure;
+			else
+				throw new RuntimeException("ParallelComponentSystem update failed.", localFailure);
+		}
+	}
+
+	private void moveChunkCommands() {
+		for (int i = 0; i < chunkCommands.size; ++i) {
+			EntityCommandBuffer commands = chunkCommands.items[i];
+			if (!commands.isEmpty())
+				commands.moveTo(entityManager.commandBuffer);
+		}
+	}
+
+	private void ensureChunkCommands(int numChunks) {
+		while (chunkCommands.size < numChunks)
+			chunkCommands.add(new EntityCommandBuffer(entityManager));
+	}
+
+	private void ensureWorkers(int numWorkers) {
+		while (workers.size < numWorkers)
+			workers.add(new Worker(newScratch()));
+	}
+
+	final class Worker implements Runnable {
+		final S scratch;
+		boolean isQueued;   // submitted to the executor but not started yet. guarded by lock
+
+		Worker(S scratch) {
+			this.scratch = scratch;
+		}
+
+		void processChunks() {
+			Entity[] entities = query.entities;
+			int size = query.size;
+			float delta = ParallelComponentSystem.this.delta;
+
+			int chunk;
+			while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+				EntityCommandBuffer commands = chunkCommands.items[chunk];
+				int start = chunk * chunkSize;
+				int end = Math.min(start + chunkSize, size);
+				for (int i = start; i < end; ++i)
+					onUpdateEntity(entities[i], delta, scratch, commands);
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (lock) {
+				isQueued = false;
+				if (isClosed)
+					return;
+				++numActiveHelpers;
+			}
+
+			Throwable result = null;
+			try {
+				processChunks();
+			} catch (Throwable e) {
+				result = e;
+			}
+
+			synchronized (lock) {
+				if (result != null && failure == null)
+					failure = result;
+				--numActiveHelpers;
+				if (numActiveHelpers == 0)
+					lock.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package ca.blarg.gdx.entities;
+
+import ca.blarg.gdx.entities.systemcomponents.PositionComponent;
+import ca.blarg.gdx.events.EventManager;
+import ca.blarg.gdx.math.IntersectionTester;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.math.collision.Sphere;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Keeps every entity with a PositionComponent in a uniform grid of cells (hashed by cell coordinates, so the world
+ * does not need to be bounded), so that entities near a point, inside a box or along a ray can be found without
+ * looking at every entity. Add it with EntityManager.addSubsystem().
+ *
+ * The grid is brought up to date once per onUpdateGameState() (only entities that moved into a different cell are
+ * touched), so add this system after any systems which move entities, or call update() directly when entities
+ * have moved and need to be found in the same tick. Candidates from the grid are checked against their current
+ * PositionComponent with IntersectionTester, treating each entity as a sphere of PositionComponent.radius.
+ *
+ * Queries are not thread-safe (they share scratch state and update the grid's query stamps), so they must only be
+ * made from one thread at a time: from the thread that owns the EntityManager, or from systems which declare no
+ * component access and so are never run alongside other systems (see ComponentSystem.reads()).
+ */
+public class SpatialIndexSystem extends ComponentSystem {
+	static final float DEFAULT_CELL_SIZE = 8.0f;
+
+	static final class Cell {
+		long key;
+		Entity[] entities = new Entity[8];
+		int size;
+	}
+
+	float cellSize;
+	final LongMap<Cell> cells;
+	final Array<Cell> freeCells;
+	final Array<Archetype> archetypes;
+
+	// all indexed by entity index
+	Entity[] trackedEntities;
+	Cell[] entityCells;
+	int[] entitySlots;          // position in entityCells[i].entities
+	int[] updateStamps;
+	int[] queryStamps;
+	int numTracked;
+	int updateStamp;
+	int queryStamp;
+
+	float maxRadius;
+	int minCellX, minCellY, minCellZ;
+	int maxCellX, maxCellY, maxCellZ;
+
+	final Vector3 tmpPoint = new Vector3();
+	final Sphere tmpSphere = new Sphere(new Vector3(), 0.0f);
+	final Sphere tmpEntitySphere = new Sphere(new Vector3(), 0.0f);
+
+	public SpatialIndexSystem(EntityManager entityManager, EventManager eventManager) {
+		super(entityManager, eventManager);
+		cellSize = DEFAULT_CELL_SIZE;
+		cells = new LongMap<Cell>();
+		freeCells = new Array<Cell>(false, 16, Cell.class);
+		archetypes = new Array<Archetype>(false, 16, Archetype.class);
+		trackedEntities = new Entity[64];
+		entityCells = new Cell[64];
+		entitySlots = new int[64];
+		updateStamps = new int[64];
+		queryStamps = new int[64];
+
+		// no reads() / writes() on purpose: the grid must not be rebuilt while some other system is querying it, so
+		// this always runs in a stage of its own
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	// cells should be roughly the size of the typical query radius. changing this rebuilds the whole grid
+	public void setCellSize(float cellSize) {
+		if (cellSize <= 0.0f)
+			throw new IllegalArgumentException("cellSize must be greater than 0.");
+
+		this.cellSize = cellSize;
+		clear();
+		update();
+	}
+
+	@Override
+	public void onUpdateGameState(float delta) {
+		update();
+	}
+
+	/*** grid updating ***/
+
+	public void update() {
+		++updateStamp;
+		maxRadius = 0.0f;
+		minCellX = minCellY = minCellZ = Integer.MAX_VALUE;
+		maxCellX = maxCellY = maxCellZ = Integer.MIN_VALUE;
+
+		archetypes.clear();
+		entityManager.getArchetypesWith(PositionComponent.class, archetypes);
+
+		int numCurrent = 0;
+		for (int i = 0; i < archetypes.size; ++i) {
+			Archetype archetype = archetypes.items[i];
+			Component[] positions = archetype.getComponents(PositionComponent.class);
+			numCurrent += archetype.size;
+			for (int row = 0; row < archetype.size; ++row)
+				updateEntity(archetype.entities[row], (PositionComponent)positions[row]);
+		}
+
+		// anything tracked but not seen this update has either been removed or lost its PositionComponent
+		if (numTracked > numCurrent) {
+			for (int i = 0; i < trackedEntities.length && numTracked > numCurrent; ++i) {
+				if (trackedEntities[i] != null && updateStamps[i] != updateStamp)
+					untrack(i);
+			}
+		}
+	}
+
+	private void updateEntity(Entity entity, PositionComponent position) {
+		int index = entity.index;
+		ensureCapacity(index + 1);
+
+		Vector3 p = position.position;
+		int x = toCell(p.x);
+		int y = toCell(p.y);
+		int z = toCell(p.z);
+		long key = toKey(x, y, z);
+
+		if (trackedEntities[index] != entity) {
+			// index was re-used by another entity since the last update
+			if (trackedEntities[index] != null)
+				untrack(index);
+			trackedEntities[index] = entity;
+			++numTracked;
+			addToCell(index, getCell(key));
+		} else if (entityCells[index].key != key) {
+			removeFromCell(index);
+			addToCell(index, getCell(key));
+		}
+
+		updateStamps[index] = updateStamp;
+		maxRadius = Math.max(maxRadius, position.radius);
+		minCellX = Math.min(minCellX, x);
+		minCellY = Math.min(minCellY, y);
+		minCellZ = Math.min(minCellZ, z);
+		maxCellX = Math.max(maxCellX, x);
+		maxCellY = Math.max(maxCellY, y);
+		maxCellZ = Math.max(maxCellZ, z);
+	}
+
+	private void untrack(int index) {
+		removeFromCell(index);
+		trackedEntities[index] = null;
+		--numTracked;
+	}
+
+	public void clear() {
+		for (Cell cell : cells.values()) {
+			for (int i = 0; i < cell.size; ++i)
+				cell.entities[i] = null;
+			cell.size = 0;
+			freeCells.add(cell);
+		}
+		cells.clear();
+		for (int i = 0; i < trackedEntities.length; ++i) {
+			trackedEntities[i] = null;
+			entityCells[i] = null;
+		}
+		numTracked = 0;
+	}
+
+	/*** queries ***/
+
+	// entities whose sphere touches the given sphere
+	public void getWithinRadius(Vector3 center, float radius, Array<Entity> outEntities) {
+		if (outEntities == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the matching entities in.");
+
+		tmpSphere.center.set(center);
+		tmpSphere.radius = radius;
+
+		float reach = radius + maxRadius;
+		int x1 = toCell(center.x - reach), x2 = toCell(center.x + reach);
+		int y1 = toCell(center.y - reach), y2 = toCell(center.y + reach);
+		int z1 = toCell(center.z - reach), z2 = toCell(center.z + reach);
+
+		++queryStamp;
+		if (isCheaperToScanAllCells(x1, y1, z1, x2, y2, z2)) {
+			for (Cell cell : cells.values())
+				collectWithinRadius(cell, outEntities);
+		} else {
+			for (int x = x1; x <= x2; ++x) {
+				for (int y = y1; y <= y2; ++y) {
+					for (int z = z1; z <= z2; ++z) {
+						Cell cell = cells.get(toKey(x, y, z));
+						if (cell != null)
+							collectWithinRadius(cell, outEntities);
+					}
+				}
+			}
+		}
+	}
+
+	// entities whose sphere touches the given box
+	public void getWithin(BoundingBox box, Array<Entity> outEntities) {
+		if (outEntities == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the matching entities in.");
+
+		int x1 = toCell(box.min.x - maxRadius), x2 = toCell(box.max.x + maxRadius);
+		int y1 = toCell(box.min.y - maxRadius), y2 = toCell(box.max.y + maxRadius);
+		int z1 = toCell(box.min.z - maxRadius), z2 = toCell(box.max.z + maxRadius);
+
+		++queryStamp;
+		if (isCheaperToScanAllCells(x1, y1, z1, x2, y2, z2)) {
+			for (Cell cell : cells.values())
+				collectWithin(cell, box, outEntities);
+		} else {
+			for (int x = x1; x <= x2; ++x) {
+				for (int y = y1; y <= y2; ++y) {
+					for (int z = z1; z <= z2; ++z) {
+						Cell cell = cells.get(toKey(x, y, z));
+						if (cell != null)
+							collectWithin(cell, box, outEntities);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Entities whose sphere is hit by the ray within maxDistance of its origin. The ray's direction must be
+	 * normalized (com.badlogic.gdx.math.collision.Ray normalizes it already). Cells are walked along the ray from
+	 * its origin, so entities are found roughly in order of distance along the ray.
+	 */
+	public void getIntersecting(Ray ray, float maxDistance, Array<Entity> outEntities) {
+		if (outEntities == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the matching entities in.");
+		if (numTracked == 0)
+			return;
+
+		Vector3 origin = ray.origin;
+		Vector3 direction = ray.direction;
+
+		// entities are only stored in the cell their position is in, so neighbouring cells within reach of the
+		// largest radius also need to be looked at for each cell the ray passes through
+		int reach = (int)Math.ceil(maxRadius / cellSize);
+
+		int x = toCell(origin.x);
+		int y = toCell(origin.y);
+		int z = toCell(origin.z);
+		int stepX = (direction.x > 0.0f ? 1 : (direction.x < 0.0f ? -1 : 0));
+		int stepY = (direction.y > 0.0f ? 1 : (direction.y < 0.0f ? -1 : 0));
+		int stepZ = (direction.z > 0.0f ? 1 : (direction.z < 0.0f ? -1 : 0));
+		float deltaX = (stepX != 0 ? cellSize / Math.abs(direction.x) : Float.MAX_VALUE);
+		float deltaY = (stepY != 0 ? cellSize / Math.abs(direction.y) : Float.MAX_VALUE);
+		float deltaZ = (stepZ != 0 ? cellSize / Math.abs(direction.z) : Float.MAX_VALUE);
+		float nextX = (stepX != 0 ? ((x + (stepX > 0 ? 1 : 0)) * cellSize - origin.x) / direction.x : Float.MAX_VALUE);
+		float nextY = (stepY != 0 ? ((y + (stepY > 0 ? 1 : 0)) * cellSize - origin.y) / direction.y : Float.MAX_VALUE);
+		float nextZ = (stepZ != 0 ? ((z + (stepZ > 0 ? 1 : 0)) * cellSize - origin.z) / direction.z : Float.MAX_VALUE);
+
+		++queryStamp;
+		float t = 0.0f;
+		while (t <= maxDistance) {
+			// stop once the ray has left the occupied part of the grid and is moving away from it
+			if ((x < minCellX - reach && stepX <= 0) || (x > maxCellX + reach && stepX >= 0) ||
+			    (y < minCellY - reach && stepY <= 0) || (y > maxCellY + reach && stepY >= 0) ||
+			    (z < minCellZ - reach && stepZ <= 0) || (z > maxCellZ + reach && stepZ >= 0))
+				break;
+
+			for (int nx = x - reach; nx <= x + reach; ++nx) {
+				for (int ny = y - reach; ny <= y + reach; ++ny) {
+					for (int nz = z - reach; nz <= z + reach; ++nz) {
+						Cell cell = cells.get(toKey(nx, ny, nz));
+						if (cell != null)
+							collectIntersecting(cell, ray, maxDistance, outEntities);
+					}
+				}
+			}
+
+			if (nextX <= nextY && nextX <= nextZ) {
+				t = nextX;
+				nextX += deltaX;
+				x += stepX;
+			} else if (nextY <= nextZ) {
+				t = nextY;
+				nextY += deltaY;
+				y += stepY;
+			} else {
+				t = nextZ;
+				nextZ += deltaZ;
+				z += stepZ;
+			}
+		}
+	}
+
+	/*** narrow phase ***/
+
+	private void collectWithinRadius(Cell cell, Array<Entity> outEntities) {
+		for (int i = 0; i < cell.size; ++i) {
+			Entity entity = cell.entities[i];
+			if (setEntitySphere(entity) && IntersectionTester.test(tmpSphere, tmpEntitySphere))
+				outEntities.add(entity);
+		}
+	}
+
+	private void collectWithin(Cell cell, BoundingBox box, Array<Entity> outEntities) {
+		for (int i = 0; i < cell.size; ++i) {
+			Entity entity = cell.entities[i];
+			if (setEntitySphere(entity) && IntersectionTester.test(box, tmpEntitySphere))
+				outEntities.add(entity);
+		}
+	}
+
+	private void collectIntersecting(Cell cell, Ray ray, float maxDistance, Array<Entity> outEntities) {
+		for (int i = 0; i < cell.size; ++i) {
+			Entity entity = cell.entities[i];
+			if (!setEntitySphere(entity) || tmpEntitySphere.radius <= 0.0f)
+				continue;
+			if (IntersectionTester.test(ray, tmpEntitySphere, tmpPoint) && tmpPoint.dst(ray.origin) <= maxDistance)
+				outEntities.add(entity);
+		}
+	}
+
+	// returns false if the entity was already looked at by the current query (or is no longer valid)
+	private boolean setEntitySphere(Entity entity) {
+		if (!entity.isValid())
+			return false;
+
+		int index = entity.index;
+		if (queryStamps[index] == queryStamp)
+			return false;
+		queryStamps[index] = queryStamp;
+
+		PositionComponent position = entity.get(PositionComponent.class);
+		if (position == null)
+			return false;
+
+		tmpEntitySphere.center.set(position.position);
+		tmpEntitySphere.radius = position.radius;
+		return true;
+	}
+
+	/*** cells ***/
+
+	private int toCell(float coordinate) {
+		return (int)Math.floor(coordinate / cellSize);
+	}
+
+	// 21 bits per axis, so cell coordinates wrap around after about a million cells in any direction
+	private static long toKey(int x, int y, int z) {
+		return ((long)(x & 0x1fffff) << 42) | ((long)(y & 0x1fffff) << 21) | (long)(z & 0x1fffff);
+	}
+
+	private boolean isCheaperToScanAllCells(int x1, int y1, int z1, int x2, int y2, int z2) {
+		long numCells = (long)(x2 - x1 + 1) * (long)(y2 - y1 + 1) * (long)(z2 - z1 + 1);
+		return numCells > cells.size;
+	}
+
+	private Cell getCell(long key) {
+		Cell cell = cells.get(key);
+		if (cell == null) {
+			cell = (freeCells.size > 0 ? freeCells.pop() : new Cell());
+			cell.key = key;
+			cells.put(key, cell);
+		}
+		return cell;
+	}
+
+	private void addToCell(int index, Cell cell) {
+		if (cell.size == cell.entities.length) {
+			Entity[] newEntities = new Entity[(int)(cell.size * 1.75f)];
+			System.arraycopy(cell.entities, 0, newEntities, 0, cell.size);
+			cell.entities = newEntities;
+		}
+
+		entityCells[index] = cell;
+		entitySlots[index] = cell.size;
+		cell.entities[cell.size++] = trackedEntities[index];
+	}
+
+	private void removeFromCell(int index) {
+		Cell cell = entityCells[index];
+		int slot = entitySlots[index];
+		int last = --cell.size;
+		if (slot != last) {
+			Entity moved = cell.entities[last];
+			cell.entities[slot] = moved;
+			entitySlots[moved.index] = slot;
+		}
+		cell.entities[last] = null;
+		entityCells[index] = null;
+
+		if (cell.size == 0) {
+			cells.remove(cell.key);
+			freeCells.add(cell);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= trackedEntities.length)
+			return;
+
+		int newCapacity = Math.max(capacity, (int)(trackedEntities.length * 1.75f));
+
+		Entity[] newTrackedEntities = new Entity[newCapacity];
+		System.arraycopy(trackedEntities, 0, newTrackedEntities, 0, trackedEntities.length);
+		trackedEntities = newTrackedEntities;
+
+		Cell[] newEntityCells = new Cell[newCapacity];
+		System.arraycopy(entityCells, 0, newEntityCells, 0, entityCells.length);
+		entityCells = newEntityCells;
+
+		int[] newEntitySlots = new int[newCapacity];
+		System.arraycopy(entitySlots, 0, newEntitySlots, 0, entitySlots.length);
+		entitySlots = newEntitySlots;
+
+		int[] newUpdateStamps = new int[newCapacity];
+		System.arraycopy(updateStamps, 0, newUpdateStamps, 0, updateStamps.length);
+		updateStamps = newUpdateStamps;
+
+		int[] newQueryStamps = new int[newCapacity];
+		System.arraycopy(queryStamps, 0, newQueryStamps, 0, queryStamps.length);
+		queryStamps = newQueryStamps;
+	}
+
+	@Override
+	public void dispose() {
+		clear();
+	}
+}
@@ -0,0 +1,180 @@
+package ca.blarg.gdx.entities;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+
+import java.util.concurrent.ExecutorService;
+
+// runs ComponentSystem.onUpdateGameState() for all systems, grouping systems whose declared component reads and
+// writes don't conflict into stages which are run concurrently. stages are built purely from registration order
+// and declarations, so the same set of systems always gets the same stages. every stage is fully joined before
+// the next one starts, and the last one before run() returns
+
+class SystemScheduler {
+	final EntityManager entityManager;
+	final ExecutorService executor;
+
+	final Array<SystemTask> tasks;
+	final Array<SystemTask[]> stages;
+	boolean isDirty;
+
+	final Object lock;
+	int pending;
+	Throwable failure;
+
+	SystemScheduler(EntityManager entityManager, ExecutorService executor) {
+		this.entityManager = entityManager;
+		this.executor = executor;
+		tasks = new Array<SystemTask>(true, 16, SystemTask.class);
+		stages = new Array<SystemTask[]>();
+		isDirty = true;
+		lock = new Object();
+	}
+
+	void run(float delta) {
+		if (isDirty)
+			build();
+
+		for (int i = 0; i < stages.size; ++i) {
+			SystemTask[] stage = stages.get(i);
+			if (stage.length == 1)
+				EntityManager.updateGameState(stage[0].system, delta);
+			else
+				runConcurrently(stage, delta);
+		}
+	}
+
+	private void runConcurrently(SystemTask[] stage, float delta) {
+		synchronized (lock) {
+			pending = stage.length - 1;
+			failure = null;
+		}
+
+		// hand off all but the first system to the executor, the calling thread gets the first one
+		for (int i = 1; i < stage.length; ++i) {
+			stage[i].delta = delta;
+			executor.execute(stage[i]);
+		}
+
+		Throwable localFailure = null;
+		try {
+			EntityManager.updateGameState(stage[0].system, delta);
+		} catch (Throwable e) {
+			localFailure = e;
+		}
+
+		boolean interrupted = false;
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (localFailure == null)
+				localFailure = failure;
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (localFailure != null) {
+			if (localFailure instanceof RuntimeException)
+				throw (RuntimeException)localFailure;
+			else if (localFailure instanceof Error)
+				throw (Error)localFailure;
+			else
+				throw new RuntimeException("ComponentSystem update failed.", localFailure);
+		}
+	}
+
+	private void onTaskFinished(Throwable e) {
+		synchronized (lock) {
+			if (e != null && failure == null)
+				failure = e;
+			--pending;
+			if (pending == 0)
+				lock.notifyAll();
+		}
+	}
+
+	private void build() {
+		Array<ComponentSystem> systems = entityManager.componentSystems;
+
+		tasks.clear();
+		for (int i = 0; i < systems.size; ++i)
+			tasks.add(new SystemTask(systems.get(i)));
+
+		// each system goes in the stage after the latest stage holding a system it conflicts with
+		int[] stageIndices = new int[tasks.size];
+		int numStages = 0;
+		for (int i = 0; i < tasks.size; ++i) {
+			int stage = 0;
+			for (int j = 0; j < i; ++j) {
+				if (tasks.get(j).conflictsWith(tasks.get(i)))
+					stage = Math.max(stage, stageIndices[j] + 1);
+			}
+			stageIndices[i] = stage;
+			numStages = Math.max(numStages, stage + 1);
+		}
+
+		stages.clear();
+		for (int stage = 0; stage < numStages; ++stage) {
+			int count = 0;
+			for (int i = 0; i < tasks.size; ++i) {
+				if (stageIndices[i] == stage)
+					++count;
+			}
+
+			SystemTask[] stageTasks = new SystemTask[count];
+			int n = 0;
+			for (int i = 0; i < tasks.size; ++i) {
+				if (stageIndices[i] == stage)
+					stageTasks[n++] = tasks.get(i);
+			}
+			stages.add(stageTasks);
+		}
+
+		isDirty = false;
+	}
+
+	final class SystemTask implements Runnable {
+		final ComponentSystem system;
+		final boolean isExclusive;
+		final Bits reads;
+		final Bits writes;
+		float delta;
+
+		SystemTask(ComponentSystem system) {
+			this.system = system;
+			isExclusive = !system.declaresAccess;
+			reads = toMask(system.readTypes);
+			writes = toMask(system.writeTypes);
+		}
+
+		boolean conflictsWith(SystemTask other) {
+			if (isExclusive || other.isExclusive)
+				return true;
+			else
+				return writes.intersects(other.reads) || writes.intersects(other.writes) || other.writes.intersects(reads);
+		}
+
+		private Bits toMask(Array<Class<? extends Component>> componentTypes) {
+			Bits mask = new Bits();
+			for (int i = 0; i < componentTypes.size; ++i)
+				mask.set(entityManager.getComponentType(componentTypes.get(i), true).id);
+			return mask;
+		}
+
+		@Override
+		public void run() {
+			Throwable result = null;
+			try {
+				EntityManager.updateGameState(system, delta);
+			} catch (Throwable e) {
+				result = e;
+			}
+			onTaskFinished(result);
+		}
+	}
+}
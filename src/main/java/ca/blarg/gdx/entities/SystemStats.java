@@ -0,0 +1,23 @@
+package ca.blarg.gdx.entities;
+
+// timings for each of the update/render calls of a single ComponentSystem
+
+public final class SystemStats {
+	public final ComponentSystem system;
+	public final TimingStats updateGameState;
+	public final TimingStats updateFrame;
+	public final TimingStats render;
+
+	SystemStats(ComponentSystem system, int windowSize) {
+		this.system = system;
+		updateGameState = new TimingStats(windowSize);
+		updateFrame = new TimingStats(windowSize);
+		render = new TimingStats(windowSize);
+	}
+
+	public void reset() {
+		updateGameState.reset();
+		updateFrame.reset();
+		render.reset();
+	}
+}
@@ -0,0 +1,108 @@
+package ca.blarg.gdx.entities;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of the last few timing samples (in nanoseconds) of something that runs repeatedly, e.g. a
+ * ComponentSystem's onUpdateGameState(). Min/average/max/percentiles are worked out over the samples currently in
+ * the window when asked for.
+ */
+public final class TimingStats {
+	final long[] samples;
+	int next;
+	int count;
+	long last;
+	long total;     // of all samples ever added since the last reset, not just the window
+	long numTotal;
+
+	final long[] sorted;
+	boolean isSortedDirty;
+
+	TimingStats(int windowSize) {
+		samples = new long[windowSize];
+		sorted = new long[windowSize];
+	}
+
+	void add(long nanos) {
+		samples[next] = nanos;
+		next = (next + 1) % samples.length;
+		if (count < samples.length)
+			++count;
+		last = nanos;
+		total += nanos;
+		++numTotal;
+		isSortedDirty = true;
+	}
+
+	public int getNumSamples() {
+		return count;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	public long getMin() {
+		if (count == 0)
+			return 0;
+		return getSorted()[0];
+	}
+
+	public long getMax() {
+		if (count == 0)
+			return 0;
+		return getSorted()[count - 1];
+	}
+
+	public long getAverage() {
+		if (count == 0)
+			return 0;
+
+		long sum = 0;
+		for (int i = 0; i < count; ++i)
+			sum += samples[i];
+		return sum / count;
+	}
+
+	// percentile is from 0 to 100
+	public long getPercentile(float percentile) {
+		if (percentile < 0.0f || percentile > 100.0f)
+			throw new IllegalArgumentException("percentile must be between 0 and 100.");
+		if (count == 0)
+			return 0;
+
+		int index = (int)Math.ceil(percentile / 100.0f * count) - 1;
+		return getSorted()[Math.max(index, 0)];
+	}
+
+	public long getP99() {
+		return getPercentile(99.0f);
+	}
+
+	// total time of all samples since the last reset (including the ones which have dropped out of the window)
+	public long getTotal() {
+		return total;
+	}
+
+	public long getNumTotal() {
+		return numTotal;
+	}
+
+	public void reset() {
+		next = 0;
+		count = 0;
+		last = 0;
+		total = 0;
+		numTotal = 0;
+		isSortedDirty = true;
+	}
+
+	private long[] getSorted() {
+		if (isSortedDirty) {
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			isSortedDirty = false;
+		}
+		return sorted;
+	}
+}
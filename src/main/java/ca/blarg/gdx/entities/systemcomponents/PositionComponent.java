@@ -0,0 +1,18 @@
+package ca.blarg.gdx.entities.systemcomponents;
+
+import ca.blarg.gdx.entities.Component;
+import com.badlogic.gdx.math.Vector3;
+
+public class PositionComponent extends Component {
+	public final Vector3 position = new Vector3();
+
+	// radius of a sphere around position that the entity takes up. 0 means the entity is just a point, which ray
+	// queries will never hit
+	public float radius;
+
+	@Override
+	public void reset() {
+		position.setZero();
+		radius = 0.0f;
+	}
+}
@@ -0,0 +1,54 @@
+package ca.blarg.gdx.events;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// a lock-free multiple-producer, single-consumer queue of events. events are linked together through their own
+// nextQueued field (so pushing never allocates) onto a stack, which the consumer takes over as a whole and
+// reverses back into the order the events were pushed in
+
+final class ConcurrentEventQueue {
+	final AtomicReference<Event> top = new AtomicReference<Event>();
+
+	// can be called from any thread
+	void push(Event e) {
+		Event current;
+		do {
+			current = top.get();
+			e.nextQueued = current;
+		} while (!top.compareAndSet(current, e));
+	}
+
+	boolean isEmpty() {
+		return top.get() == null;
+	}
+
+	// walks everything pushed so far. events already on the stack are never relinked by pushes, so this is safe
+	// alongside producers, but must only be called from the thread that drains
+	int size() {
+		int size = 0;
+		for (Event e = top.get(); e != null; e = e.nextQueued)
+			++size;
+		return size;
+	}
+
+	// hands everything pushed so far over to the EventManager to be queued normally, in the order it was pushed.
+	// must only be called from one thread
+	void drainTo(EventManager eventManager) {
+		Event e = top.getAndSet(null);
+
+		Event reversed = null;
+		while (e != null) {
+			Event next = e.nextQueued;
+			e.nextQueued = reversed;
+			reversed = e;
+			e = next;
+		}
+
+		while (reversed != null) {
+			Event next = reversed.nextQueued;
+			reversed.nextQueued = null;
+			eventManager.enqueueDrained(reversed);
+			reversed = next;
+		}
+	}
+}
@@ -3,4 +3,17 @@ package ca.blarg.gdx.events;
 import com.badlogic.gdx.utils.Pool;
 
 public abstract class Event implements Pool.Poolable {
+	final int typeId;
+	Event nextQueued;   // used by ConcurrentEventQueue
+	int queuedSequence; // used by EventManager for coalesced event types
+	boolean isRecordedOnDrain;   // used by EventManager when recording with thread-safe queueing
+
+	public Event() {
+		typeId = EventTypes.getId(getClass().asSubclass(Event.class));
+	}
+
+	// a small integer uniquely identifying this event's class (for as long as the application runs)
+	public final int getTypeId() {
+		return typeId;
+	}
 }
@@ -0,0 +1,16 @@
+package ca.blarg.gdx.events;
+
+/**
+ * Lets queued events of one type be combined while they are still waiting to be processed. See
+ * EventManager.setCoalescer().
+ */
+public interface EventCoalescer<T extends Event> {
+	// identifies which queued events can be combined with each other (e.g. the entity the event is about). events
+	// with a null key are never combined
+	Object getKey(T e);
+
+	// called when e is queued while pending, which has the same key, is still waiting to be processed. return
+	// pending (after merging anything needed from e into it) to keep it where it is in the queue, or e to put it in
+	// pending's place. whichever one isn't returned is freed
+	T coalesce(T pending, T e);
+}
@@ -16,6 +16,10 @@ public abstract class EventHandler implements EventListener {
 		return eventManager.addListener(eventType, this);
 	}
 
+	public <T extends Event> boolean listenFor(Class<T> eventType, int priority) {
+		return eventManager.addListener(eventType, this, priority);
+	}
+
 	public <T extends Event> boolean stopListeningFor(Class<T> eventType) {
 		return eventManager.removeListener(eventType, this);
 	}
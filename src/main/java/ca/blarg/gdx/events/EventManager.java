@@ -3,51 +3,152 @@ package ca.blarg.gdx.events;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.ObjectSet;
-import com.badlogic.gdx.utils.Pools;
-
-import java.util.LinkedList;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.ReflectionPool;
 
 @SuppressWarnings("unchecked")
 public class EventManager {
 	static final int NUM_EVENT_QUEUES = 2;
 
-	ObjectSet<Class<? extends Event>> typeList;
-	ObjectMap<Class<? extends Event>, Array<EventListener>> registry;
-	LinkedList<Event>[] queues;
+	ListenerList[] registry;   // indexed by event type id, null for types never listened for
+	boolean isHierarchical;
+	ListenerList[] dispatchLists;   // hierarchical dispatch only: per event type id, the listeners for that type
+	                                // and all of its superclasses. built as needed
+	EventQueue[] queues;
 	int activeQueue;
+	Coalescing[] coalescing;   // indexed by event type id, null for types which aren't coalesced
+	final Array<Coalescing> coalescedTypes = new Array<Coalescing>(false, 8, Coalescing.class);
+	ScheduledEventHeap scheduledByTime;
+	ScheduledEventHeap scheduledByTick;
+	double time;
+	long tick;
+	int maxEventsPerUpdate;      // 0 = no limit
+	long maxNanosPerUpdate;      // 0 = no limit
+	int numProcessed;
+	int numCarriedOver;
+	int peakCarriedOver;
+	EventRecorder recorder;   // null unless recording
+	EventManagerStats stats;  // null unless instrumentation is turned on
+	int dispatchDepth;        // > 0 while listeners are being called
+	volatile Thread dispatchingThread;   // the thread calling listeners while dispatchDepth > 0, otherwise null
+	ConcurrentEventQueue concurrentQueue;   // null unless thread-safe queueing is turned on
+	final Object eventPoolLock = new Object();
+	Pool<? extends Event>[] eventPools;     // indexed by event type id
+	int defaultEventPoolMax;
 
 	public EventManager() {
 		Gdx.app.debug("EventManager", "ctor");
-		typeList = new ObjectSet<Class<? extends Event>>();
-		registry = new ObjectMap<Class<? extends Event>, Array<EventListener>>();
-		queues = new LinkedList[NUM_EVENT_QUEUES];
+		registry = new ListenerList[16];
+		queues = new EventQueue[NUM_EVENT_QUEUES];
 		for (int i = 0; i < queues.length; ++i)
-			queues[i] = new LinkedList<Event>();
+			queues[i] = new EventQueue();
 
 		activeQueue = 0;
+		coalescing = new Coalescing[16];
+		scheduledByTime = new ScheduledEventHeap();
+		scheduledByTick = new ScheduledEventHeap();
+		eventPools = newEventPools(16);
+		defaultEventPoolMax = 100;
+	}
+
+	/**
+	 * Lets queue() (and create()/free()) be called from any thread. While turned on, queued events are collected
+	 * without locking and moved into the regular queue, in the order they were queued, at the start of the next
+	 * onUpdate() (or abort()) call. Everything else must still only be called from the thread which calls
+	 * onUpdate().
+	 */
+	public void setThreadSafeQueueing(boolean enabled) {
+		if (enabled && concurrentQueue == null)
+			concurrentQueue = new ConcurrentEventQueue();
+		else if (!enabled && concurrentQueue != null) {
+			concurrentQueue.drainTo(this);
+			concurrentQueue = null;
+		}
+	}
+
+	public boolean isThreadSafeQueueing() {
+		return concurrentQueue != null;
+	}
+
+	/**
+	 * With hierarchical dispatch turned on, listeners added for an event type also get all events of its
+	 * subclasses (e.g. a listener for DamageEvent also gets FireDamageEvent). Listeners for the more specific type
+	 * are called first. The combined listener list for each event type is worked out once and cached until
+	 * listeners are next added or removed, so dispatching an event costs the same as without hierarchical dispatch.
+	 */
+	public void setHierarchicalDispatch(boolean enabled) {
+		isHierarchical = enabled;
+		if (enabled && dispatchLists == null)
+			dispatchLists = new ListenerList[registry.length];
+		else if (!enabled)
+			dispatchLists = null;
+	}
+
+	public boolean isHierarchicalDispatch() {
+		return isHierarchical;
+	}
+
+	// records all events triggered, queued or scheduled from outside of listeners, and all onUpdate() calls, until
+	// set to null. see EventRecorder
+	public void setRecorder(EventRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public EventRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Turns counting of events (per event type) and timing of every listener's handle() calls on or off. While
+	 * turned off (the default), nothing is counted or timed. See EventManagerStats.
+	 */
+	public void setInstrumentation(boolean enabled) {
+		if (enabled && stats == null)
+			stats = new EventManagerStats(this);
+		else if (!enabled)
+			stats = null;
+	}
+
+	public boolean isInstrumented() {
+		return stats != null;
+	}
+
+	// returns null if instrumentation is turned off
+	public EventManagerStats getStats() {
+		return stats;
 	}
 
 	public <T extends Event> boolean addListener(Class<T> eventType, EventListener listener) {
+		return addListener(eventType, listener, 0);
+	}
+
+	// listeners with a higher priority get events first. listeners with the same priority get them in the order
+	// they were added
+	public <T extends Event> boolean addListener(Class<T> eventType, EventListener listener, int priority) {
 		if (listener == null)
 			throw new IllegalArgumentException("listener can not be null.");
 
-		Array<EventListener> listeners = registry.get(eventType);
+		int typeId = EventTypes.getId(eventType);
+		if (typeId >= registry.length) {
+			ListenerList[] newRegistry = new ListenerList[Math.max(typeId + 1, registry.length * 2)];
+			System.arraycopy(registry, 0, newRegistry, 0, registry.length);
+			registry = newRegistry;
+		}
+
+		ListenerList listeners = registry[typeId];
 		if (listeners == null) {
 			// need to register this listener for the given type
-			listeners = new Array<EventListener>();
-			registry.put(eventType, listeners);
+			listeners = new ListenerList();
+			registry[typeId] = listeners;
 		}
 
-		if (listeners.contains(listener, true))
+		if (listeners.contains(listener))
 			throw new IllegalArgumentException("Duplicate event listener registration.");
 
-		listeners.add(listener);
+		listeners.add(listener, priority);
+		invalidateDispatchLists();
 		Gdx.app.debug("EventManager", String.format("Added %s as listener for event type: %s", listener.getClass().getSimpleName(), eventType.getSimpleName()));
 
-		// also update the list of currently registered event types
-		typeList.add(eventType);
-
 		return true;
 	}
 
@@ -56,18 +157,15 @@ public class EventManager {
 			throw new IllegalArgumentException("listener can not be null.");
 
 		// get the listeners for this event type
-		Array<EventListener> listeners = registry.get(eventType);
-		if (listeners == null || !listeners.contains(listener, true))
+		ListenerList listeners = getRegisteredListeners(EventTypes.getId(eventType));
+		if (listeners == null || !listeners.remove(listener))
 			return false;  // either no listeners for this type, or the listener wasn't registered with us
 
-		listeners.removeValue(listener, true);
+		invalidateDispatchLists();
+		if (stats != null && !isRegistered(listener))
+			stats.onListenerRemoved(listener);
 		Gdx.app.debug("EventManager", String.format("Removed %s as listener for event type: %s", listener.getClass().getSimpleName(), eventType.getSimpleName()));
 
-		// if there are no more listeners for this type, remove the event type
-		// from the list of registered event types
-		if (listeners.size == 0)
-			typeList.remove(eventType);
-
 		return true;
 	}
 
@@ -75,20 +173,23 @@ public class EventManager {
 		if (e == null)
 			throw new IllegalArgumentException("event can not be null.");
 
-		Class<? extends Event> type = e.getClass().asSubclass(Event.class);
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordTrigger(e);
+		if (stats != null)
+			stats.onTriggered(e);
 
 		// find the listeners for this event type
-		Array<EventListener> listeners = registry.get(type);
+		ListenerList listeners = getListeners(e.typeId);
 		if (listeners == null)
 			return false;   // no listeners for this event type have been registered -- we can't handle the event
 
 		// trigger event in each listener
-		boolean result = false;
-		for (EventListener listener : listeners) {
-			if (listener.handle(e)) {
-				result = true;
-				break;   // don't let other listeners handle the event if this one signals it handled it
-			}
+		boolean result;
+		beginDispatch();
+		try {
+			result = dispatch(e, listeners);
+		} finally {
+			endDispatch();
 		}
 
 		// TODO: maybe, for trigger() only, it's better to force the calling code
@@ -107,11 +208,24 @@ public class EventManager {
 
 		// validate that there is infact a listener for this event type
 		// (otherwise, we don't queue this event)
-		Class<? extends Event> type = e.getClass().asSubclass(Event.class);
-		if (!typeList.contains(type))
+		// with thread-safe queueing, the listeners can't be checked from here (they could be changing on another
+		// thread). events nobody is listening for are just freed when the queue is processed instead
+		ConcurrentEventQueue concurrentQueue = this.concurrentQueue;
+		if (concurrentQueue != null) {
+			// whether to record it has to be decided here. once drained there's no telling if it came from a listener
+			// (which will queue it again by itself during replay) or from outside
+			e.isRecordedOnDrain = (recorder != null && Thread.currentThread() != dispatchingThread);
+			concurrentQueue.push(e);
+			return true;
+		}
+
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordQueue(e);
+
+		if (!hasListeners(e.typeId))
 			return false;
 
-		queues[activeQueue].add(e);
+		enqueue(e);
 
 		return true;
 	}
@@ -123,61 +237,474 @@ public class EventManager {
 	public <T extends Event> boolean abort(Class<T> eventType, boolean stopAfterFirstRemoval) {
 		// validate that there is infact a listener for this event type
 		// (otherwise, we don't queue this event)
-		if (!typeList.contains(eventType))
+		int typeId = EventTypes.getId(eventType);
+		if (!hasListeners(typeId))
 			return false;
 
-		boolean result = false;
+		drainConcurrentQueue();
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordAbort(eventType, stopAfterFirstRemoval);
 
 		// walk through the queue and remove matching events
-		LinkedList<Event> queue = queues[activeQueue];
-		int i = 0;
-		while (i < queue.size()) {
-			if (queue.get(i).getClass() == eventType) {
-				Event e = queue.remove(i);
-				free(e);
-				result = true;
-				if (stopAfterFirstRemoval)
-					break;
-			} else
-				i++;
+		if (queues[activeQueue].removeAll(typeId, stopAfterFirstRemoval, this) == 0)
+			return false;
+
+		rebuildCoalescing();   // removing events changes the sequence numbers of everything after them
+		return true;
+	}
+
+	/*** coalescing ***/
+
+	/**
+	 * Turns on coalescing for the given event type (or off, if coalescer is null). While an event of this type is
+	 * waiting in the queue, any other event of the same type with the same key (as returned by the coalescer) that
+	 * is queued is combined with it by the coalescer instead of being queued separately, so listeners only see one
+	 * event per key each onUpdate(). Works for events queued with queue() and by schedule() / scheduleInTicks() once
+	 * they come due, but not trigger().
+	 */
+	public <T extends Event> void setCoalescer(Class<T> eventType, EventCoalescer<? super T> coalescer) {
+		int typeId = EventTypes.getId(eventType);
+		if (typeId >= coalescing.length) {
+			Coalescing[] newCoalescing = new Coalescing[Math.max(typeId + 1, coalescing.length * 2)];
+			System.arraycopy(coalescing, 0, newCoalescing, 0, coalescing.length);
+			coalescing = newCoalescing;
 		}
 
-		return result;
+		if (coalescing[typeId] != null) {
+			coalescedTypes.removeValue(coalescing[typeId], true);
+			coalescing[typeId] = null;
+		}
+		if (coalescer != null) {
+			Coalescing c = new Coalescing((EventCoalescer<Event>)coalescer);
+			coalescing[typeId] = c;
+			coalescedTypes.add(c);
+			rebuildCoalescing();
+		}
+	}
+
+	public <T extends Event> EventCoalescer<? super T> getCoalescer(Class<T> eventType) {
+		int typeId = EventTypes.getId(eventType);
+		if (typeId >= coalescing.length || coalescing[typeId] == null)
+			return null;
+		else
+			return (EventCoalescer<? super T>)coalescing[typeId].coalescer;
+	}
+
+	// events queued from other threads (see setThreadSafeQueueing()) come through here once drained
+	void enqueueDrained(Event e) {
+		if (e.isRecordedOnDrain) {
+			e.isRecordedOnDrain = false;
+			if (recorder != null)
+				recorder.recordQueue(e);
+		}
+		enqueue(e);
+	}
+
+	// adds the event to the active queue, combining it with an already queued event if its type is coalesced
+	void enqueue(Event e) {
+		EventQueue queue = queues[activeQueue];
+		if (stats != null)
+			stats.onQueued(e);
+
+		Coalescing c = (e.typeId < coalescing.length ? coalescing[e.typeId] : null);
+		if (c == null) {
+			queue.addLast(e);
+			return;
+		}
+
+		Object key = c.coalescer.getKey(e);
+		if (key == null) {
+			queue.addLast(e);
+			return;
+		}
+
+		Event pending = c.pending.get(key);
+		if (pending == null) {
+			e.queuedSequence = queue.addLast(e);
+			c.pending.put(key, e);
+			return;
+		}
+
+		Event kept = c.coalescer.coalesce(pending, e);
+		if (kept == pending)
+			free(e);
+		else if (kept == e) {
+			e.queuedSequence = pending.queuedSequence;
+			queue.set(e.queuedSequence, e);
+			c.pending.put(key, e);
+			free(pending);
+		} else
+			throw new IllegalStateException("EventCoalescer.coalesce() must return one of the two events given to it.");
+	}
+
+	private void clearCoalescing() {
+		for (int i = 0; i < coalescedTypes.size; ++i)
+			coalescedTypes.items[i].pending.clear();
 	}
 
+	// works out which event is pending for each key from scratch, for when events in the active queue have moved
+	private void rebuildCoalescing() {
+		if (coalescedTypes.size == 0)
+			return;
+
+		clearCoalescing();
+		EventQueue queue = queues[activeQueue];
+		for (int i = 0; i < queue.size(); ++i) {
+			Event e = queue.get(i);
+			Coalescing c = (e.typeId < coalescing.length ? coalescing[e.typeId] : null);
+			if (c == null)
+				continue;
+
+			Object key = c.coalescer.getKey(e);
+			if (key != null) {
+				e.queuedSequence = queue.firstSequence + i;
+				c.pending.put(key, e);
+			}
+		}
+	}
+
+	/*** scheduled events ***/
+
+	// queues the event once the total of the deltas passed to onUpdate() since now reaches delay (seconds)
+	public void schedule(Event e, float delay) {
+		if (e == null)
+			throw new IllegalArgumentException("event can not be null.");
+		if (delay < 0.0f)
+			throw new IllegalArgumentException("delay can not be negative.");
+
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordSchedule(e, delay);
+
+		scheduledByTime.add(e, time + delay);
+	}
+
+	// queues the event so that it is processed by the given number of onUpdate() calls from now (1 is the same as
+	// calling queue())
+	public void scheduleInTicks(Event e, int ticks) {
+		if (e == null)
+			throw new IllegalArgumentException("event can not be null.");
+		if (ticks < 1)
+			throw new IllegalArgumentException("ticks must be at least 1.");
+
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordScheduleInTicks(e, ticks);
+
+		scheduledByTick.add(e, tick + ticks);
+	}
+
+	// removes all scheduled (not yet queued) events of the given type. returns the number of events removed
+	public <T extends Event> int abortScheduled(Class<T> eventType) {
+		if (recorder != null && dispatchDepth == 0)
+			recorder.recordAbortScheduled(eventType);
+
+		int typeId = EventTypes.getId(eventType);
+		return scheduledByTime.removeAll(typeId, this) + scheduledByTick.removeAll(typeId, this);
+	}
+
+	public int getNumScheduled() {
+		return scheduledByTime.size() + scheduledByTick.size();
+	}
+
+	// total of all deltas passed to onUpdate()
+	public double getTime() {
+		return time;
+	}
+
+	// number of times onUpdate() has been called
+	public long getTick() {
+		return tick;
+	}
+
+	private void queueDueEvents() {
+		while (!scheduledByTime.isEmpty() && scheduledByTime.peekDueAt() <= time)
+			queueScheduled(scheduledByTime.removeFirst());
+		while (!scheduledByTick.isEmpty() && scheduledByTick.peekDueAt() <= tick)
+			queueScheduled(scheduledByTick.removeFirst());
+	}
+
+	private void queueScheduled(Event e) {
+		// listeners are only checked now, they may well have been added after the event was scheduled
+		if (hasListeners(e.typeId))
+			enqueue(e);
+		else
+			free(e);
+	}
+
+	/*** processing budget ***/
+
+	/**
+	 * Limits how many queued events a single onUpdate() call will process. Events left over once the limit is reached
+	 * are carried over and processed first on the next onUpdate(), ahead of anything queued since, so the order
+	 * events are processed in doesn't change. 0 means no limit. At least one event is always processed.
+	 */
+	public void setMaxEventsPerUpdate(int maxEvents) {
+		if (maxEvents < 0)
+			throw new IllegalArgumentException("maxEvents can not be negative.");
+		maxEventsPerUpdate = maxEvents;
+	}
+
+	public int getMaxEventsPerUpdate() {
+		return maxEventsPerUpdate;
+	}
+
+	// same as setMaxEventsPerUpdate(), but limits the time (seconds) spent processing queued events instead. the
+	// time is checked after each event, so a single slow event can still go over
+	public void setMaxTimePerUpdate(float seconds) {
+		if (seconds < 0.0f)
+			throw new IllegalArgumentException("seconds can not be negative.");
+		maxNanosPerUpdate = (long)(seconds * 1000000000.0);
+	}
+
+	public float getMaxTimePerUpdate() {
+		return maxNanosPerUpdate / 1000000000.0f;
+	}
+
+	// number of events waiting to be processed by the next onUpdate() call (including any carried over, and any
+	// queued from other threads that haven't been drained yet, before coalescing). must be called from the thread
+	// calling onUpdate()
+	public int getQueueDepth() {
+		int depth = queues[activeQueue].size();
+		ConcurrentEventQueue concurrentQueue = this.concurrentQueue;
+		if (concurrentQueue != null)
+			depth += concurrentQueue.size();
+		return depth;
+	}
+
+	// number of events processed by the last onUpdate() call
+	public int getNumProcessed() {
+		return numProcessed;
+	}
+
+	// number of events the last onUpdate() call left unprocessed because it ran out of budget
+	public int getNumCarriedOver() {
+		return numCarriedOver;
+	}
+
+	public int getPeakCarriedOver() {
+		return peakCarriedOver;
+	}
+
+	public void resetPeakCarriedOver() {
+		peakCarriedOver = 0;
+	}
+
+	/*** processing ***/
+
 	public boolean onUpdate(float delta) {
+		drainConcurrentQueue();
+		if (recorder != null)
+			recorder.recordTick(delta);
+
+		time += delta;
+		++tick;
+		queueDueEvents();
+
 		// swap active queues and empty the new queue
 		int queueToProcess = activeQueue;
 		activeQueue = (activeQueue + 1) % NUM_EVENT_QUEUES;
 		queues[activeQueue].clear();
+		clearCoalescing();   // events already in the queue being processed can't be combined with any more
 
 		// process the "old" queue
-		LinkedList<Event> queue = queues[queueToProcess];
-		while (queue.size() > 0) {
-			Event e = queue.pop();
-
-			Class<? extends Event> type = e.getClass().asSubclass(Event.class);
-
-			// find the listeners for this event type
-			Array<EventListener> listeners = registry.get(type);
-			if (listeners != null) {
-				for (EventListener listener : listeners) {
-					if (listener.handle(e))
-						break;   // don't let other listeners handle the event if this one signals it handled it
-				}
+		EventQueue queue = queues[queueToProcess];
+		boolean isBudgeted = (maxEventsPerUpdate > 0 || maxNanosPerUpdate > 0);
+		long start = (maxNanosPerUpdate > 0 ? System.nanoTime() : 0);
+		numProcessed = 0;
+		beginDispatch();
+		try {
+			while (!queue.isEmpty()) {
+				if (isBudgeted && numProcessed > 0 && isOverBudget(start))
+					break;
+
+				Event e = queue.removeFirst();
+				++numProcessed;
+
+				// find the listeners for this event type
+				ListenerList listeners = getListeners(e.typeId);
+				if (listeners != null)
+					dispatch(e, listeners);
+
+				free(e);
 			}
+		} finally {
+			endDispatch();
+		}
 
-			free(e);
+		numCarriedOver = queue.size();
+		if (numCarriedOver > 0) {
+			// leftover events stay in front of anything queued while they were being processed
+			EventQueue newQueue = queues[activeQueue];
+			while (!newQueue.isEmpty())
+				queue.addLast(newQueue.removeFirst());
+			activeQueue = queueToProcess;
+			rebuildCoalescing();
+			peakCarriedOver = Math.max(peakCarriedOver, numCarriedOver);
 		}
 
 		return true;
 	}
 
+	// returns true if one of the listeners signals it handled the event. the listener array is read once up front,
+	// so listeners being added / removed by handle() calls don't change who this event goes to (see ListenerList)
+	private boolean dispatch(Event e, ListenerList list) {
+		EventListener[] listeners = list.listeners;
+		if (stats != null)
+			return stats.dispatch(e, listeners);
+
+		for (int i = 0; i < listeners.length; ++i) {
+			if (listeners[i].handle(e))
+				return true;   // don't let other listeners handle the event if this one signals it handled it
+		}
+		return false;
+	}
+
+	private void beginDispatch() {
+		if (dispatchDepth++ == 0)
+			dispatchingThread = Thread.currentThread();
+	}
+
+	private void endDispatch() {
+		if (--dispatchDepth == 0) {
+			dispatchingThread = null;
+			if (stats != null && stats.removedListeners.size > 0)
+				stats.onDispatchFinished();
+		}
+	}
+
+	private boolean isOverBudget(long start) {
+		if (maxEventsPerUpdate > 0 && numProcessed >= maxEventsPerUpdate)
+			return true;
+		else
+			return maxNanosPerUpdate > 0 && (System.nanoTime() - start) >= maxNanosPerUpdate;
+	}
+
+	// the listeners an event of the given type should be dispatched to
+	private ListenerList getListeners(int typeId) {
+		if (!isHierarchical)
+			return getRegisteredListeners(typeId);
+
+		if (typeId >= dispatchLists.length) {
+			ListenerList[] newDispatchLists = new ListenerList[Math.max(typeId + 1, dispatchLists.length * 2)];
+			System.arraycopy(dispatchLists, 0, newDispatchLists, 0, dispatchLists.length);
+			dispatchLists = newDispatchLists;
+		}
+
+		ListenerList listeners = dispatchLists[typeId];
+		if (listeners == null) {
+			// merged by priority. within the same priority, listeners for more specific types come first
+			listeners = new ListenerList();
+			for (Class<?> type = EventTypes.getType(typeId); type != Event.class; type = type.getSuperclass()) {
+				ListenerList registered = getRegisteredListeners(EventTypes.getId(type.asSubclass(Event.class)));
+				if (registered != null) {
+					EventListener[] registeredListeners = registered.listeners;
+					int[] registeredPriorities = registered.priorities;
+					for (int i = 0; i < registeredListeners.length; ++i) {
+						if (!listeners.contains(registeredListeners[i]))
+							listeners.add(registeredListeners[i], registeredPriorities[i]);
+					}
+				}
+			}
+			dispatchLists[typeId] = listeners;
+		}
+		return listeners;
+	}
+
+	// the listeners added for exactly the given type
+	// true if the listener is added for any event type
+	boolean isRegistered(EventListener listener) {
+		for (int i = 0; i < registry.length; ++i) {
+			if (registry[i] != null && registry[i].contains(listener))
+				return true;
+		}
+		return false;
+	}
+
+	private ListenerList getRegisteredListeners(int typeId) {
+		if (typeId < registry.length)
+			return registry[typeId];
+		else
+			return null;
+	}
+
+	private void invalidateDispatchLists() {
+		if (dispatchLists != null) {
+			for (int i = 0; i < dispatchLists.length; ++i)
+				dispatchLists[i] = null;
+		}
+	}
+
+	private boolean hasListeners(int typeId) {
+		ListenerList listeners = getListeners(typeId);
+		return listeners != null && listeners.size() > 0;
+	}
+
+	private void drainConcurrentQueue() {
+		if (concurrentQueue == null || concurrentQueue.isEmpty())
+			return;
+
+		concurrentQueue.drainTo(this);
+	}
+
+	/*** event pooling ***/
+
+	// maximum number of free events kept around for each event type whose pool hasn't been created yet
+	public void setDefaultEventPoolMax(int max) {
+		if (max < 0)
+			throw new IllegalArgumentException("max can not be negative.");
+
+		synchronized (eventPoolLock) {
+			defaultEventPoolMax = max;
+		}
+	}
+
+	// these can be called from any thread
+
 	public <T extends Event> T create(Class<T> eventType) {
-		return Pools.obtain(eventType);
+		int typeId = EventTypes.getId(eventType);
+		synchronized (eventPoolLock) {
+			return getEventPool(typeId, eventType).obtain();
+		}
 	}
 
 	public <T extends Event> void free(T event) {
-		Pools.free(event);
+		if (event == null)
+			throw new IllegalArgumentException("event can not be null.");
+
+		synchronized (eventPoolLock) {
+			Pool<T> pool = getEventPool(event.typeId, (Class<T>)event.getClass());
+			pool.free(event);
+		}
+	}
+
+	// must be called while holding eventPoolLock
+	private <T extends Event> Pool<T> getEventPool(int typeId, Class<T> eventType) {
+		if (typeId >= eventPools.length) {
+			Pool<? extends Event>[] newEventPools = newEventPools(Math.max(typeId + 1, eventPools.length * 2));
+			System.arraycopy(eventPools, 0, newEventPools, 0, eventPools.length);
+			eventPools = newEventPools;
+		}
+
+		Pool<? extends Event> pool = eventPools[typeId];
+		if (pool == null) {
+			pool = new ReflectionPool<T>(eventType, 16, defaultEventPoolMax);
+			eventPools[typeId] = pool;
+		}
+		return (Pool<T>)pool;
+	}
+
+	// generic arrays can't be created directly. the cast is safe, the array only ever holds pools of events
+	@SuppressWarnings("unchecked")
+	private static Pool<? extends Event>[] newEventPools(int size) {
+		return (Pool<? extends Event>[])new Pool<?>[size];
+	}
+
+	static final class Coalescing {
+		final EventCoalescer<Event> coalescer;
+		final ObjectMap<Object, Event> pending;   // the queued event for each key
+
+		Coalescing(EventCoalescer<Event> coalescer) {
+			this.coalescer = coalescer;
+			pending = new ObjectMap<Object, Event>();
+		}
 	}
 }
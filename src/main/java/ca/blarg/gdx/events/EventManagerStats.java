@@ -0,0 +1,234 @@
+package ca.blarg.gdx.events;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+
+/**
+ * Counts for each event type and timings for each listener of an EventManager, available from
+ * EventManager.getStats() while instrumentation is turned on (see EventManager.setInstrumentation()). Rates are
+ * worked out over the time passed to EventManager.onUpdate() since the stats were last reset.
+ */
+public class EventManagerStats {
+	public interface SlowListenerCallback {
+		// called right after a handle() call that took longer than the threshold
+		void onSlowListener(EventListener listener, Event e, long nanos);
+	}
+
+	public final EventManager eventManager;
+
+	EventTypeStats[] typeStats;   // indexed by event type id
+	final IdentityMap<EventListener, ListenerStats> listenerStats;   // only for currently registered listeners
+	final Array<EventListener> removedListeners;   // removed while listeners were being called, dropped afterwards
+	double startTime;
+
+	long slowThreshold;   // nanoseconds, 0 = off
+	SlowListenerCallback slowListenerCallback;
+
+	EventManagerStats(EventManager eventManager) {
+		this.eventManager = eventManager;
+		typeStats = new EventTypeStats[16];
+		listenerStats = new IdentityMap<EventListener, ListenerStats>();
+		removedListeners = new Array<EventListener>(false, 4, EventListener.class);
+		startTime = eventManager.time;
+	}
+
+	/**
+	 * Calls the callback whenever a single handle() call takes longer than the given number of microseconds. A
+	 * callback of null (or a threshold of 0) turns this off.
+	 */
+	public void setSlowListenerThreshold(int microseconds, SlowListenerCallback callback) {
+		if (microseconds < 0)
+			throw new IllegalArgumentException("microseconds can not be negative.");
+
+		slowThreshold = (callback == null ? 0 : microseconds * 1000L);
+		slowListenerCallback = callback;
+	}
+
+	/*** event types ***/
+
+	// returns null if no events of this type have been seen since instrumentation was turned on
+	public <T extends Event> EventTypeStats getTypeStats(Class<T> eventType) {
+		int typeId = EventTypes.getId(eventType);
+		if (typeId >= typeStats.length)
+			return null;
+		else
+			return typeStats[typeId];
+	}
+
+	public void getAllTypeStats(Array<EventTypeStats> outStats) {
+		if (outStats == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the event type stats in.");
+
+		for (int i = 0; i < typeStats.length; ++i) {
+			if (typeStats[i] != null)
+				outStats.add(typeStats[i]);
+		}
+	}
+
+	// events dispatched per second of the given type
+	public <T extends Event> float getRate(Class<T> eventType) {
+		EventTypeStats stats = getTypeStats(eventType);
+		if (stats == null)
+			return 0.0f;
+		else
+			return getRate(stats.numDispatched);
+	}
+
+	/*** listeners ***/
+
+	// returns null if the listener hasn't been called since instrumentation was turned on, or is no longer added for any
+	// event type
+	public ListenerStats getListenerStats(EventListener listener) {
+		return listenerStats.get(listener);
+	}
+
+	public void getAllListenerStats(Array<ListenerStats> outStats) {
+		if (outStats == null)
+			throw new IllegalArgumentException("Must supply an Array object to store the listener stats in.");
+
+		for (ListenerStats stats : listenerStats.values())
+			outStats.add(stats);
+	}
+
+	/*** dumping ***/
+
+	public void reset() {
+		for (int i = 0; i < typeStats.length; ++i) {
+			if (typeStats[i] != null)
+				typeStats[i].reset();
+		}
+		for (ListenerStats stats : listenerStats.values())
+			stats.reset();
+		startTime = eventManager.time;
+	}
+
+	public void dump(StringBuilder sb) {
+		sb.append(String.format("%-40s %10s %10s %10s %10s %10s\n", "event type", "triggered", "queued", "dispatched", "per sec", "time (us)"));
+		for (int i = 0; i < typeStats.length; ++i) {
+			EventTypeStats stats = typeStats[i];
+			if (stats == null)
+				continue;
+
+			sb.append(String.format("%-40s %10d %10d %10d %10.1f %10.1f\n", stats.type.getSimpleName(),
+			                        stats.numTriggered, stats.numQueued, stats.numDispatched,
+			                        getRate(stats.numDispatched), stats.handleTime / 1000.0f));
+		}
+
+		sb.append(String.format("%-40s %10s %10s %10s %10s\n", "listener", "calls", "total (us)", "avg (us)", "max (us)"));
+		for (ListenerStats stats : listenerStats.values()) {
+			sb.append(String.format("%-40s %10d %10.1f %10.1f %10.1f\n", getName(stats.listener.getClass()),
+			                        stats.numCalls, stats.totalTime / 1000.0f, stats.getAverageTime() / 1000.0f,
+			                        stats.maxTime / 1000.0f));
+		}
+	}
+
+	public void log() {
+		String[] lines = toString().split("\n");
+		for (int i = 0; i < lines.length; ++i)
+			Gdx.app.log("EventManagerStats", lines[i]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		dump(sb);
+		return sb.toString();
+	}
+
+	/*** package-private ***/
+
+	void onTriggered(Event e) {
+		++getTypeStats(e).numTriggered;
+	}
+
+	void onQueued(Event e) {
+		++getTypeStats(e).numQueued;
+	}
+
+	// called once a listener isn't registered for any event type anymore, so its stats don't keep it reachable
+	void onListenerRemoved(EventListener listener) {
+		// while dispatching, it may still be called (see ListenerList), which would just add it back again
+		if (eventManager.dispatchDepth > 0)
+			removedListeners.add(listener);
+		else
+			listenerStats.remove(listener);
+	}
+
+	// called once the EventManager is done calling listeners
+	void onDispatchFinished() {
+		for (int i = 0; i < removedListeners.size; ++i) {
+			EventListener listener = removedListeners.items[i];
+			if (!eventManager.isRegistered(listener))
+				listenerStats.remove(listener);
+		}
+		removedListeners.clear();
+	}
+
+	// same as EventManager's own dispatch loop, but timing each listener
+	boolean dispatch(Event e, EventListener[] listeners) {
+		EventTypeStats eventStats = getTypeStats(e);
+		++eventStats.numDispatched;
+
+		boolean result = false;
+		long start = System.nanoTime();
+		for (int i = 0; i < listeners.length; ++i) {
+			EventListener listener = listeners[i];
+			boolean handled = listener.handle(e);
+			long end = System.nanoTime();
+			long time = end - start;
+			start = end;
+
+			ListenerStats stats = listenerStats.get(listener);
+			if (stats == null) {
+				stats = new ListenerStats(listener);
+				listenerStats.put(listener, stats);
+			}
+			++stats.numCalls;
+			stats.totalTime += time;
+			stats.maxTime = Math.max(stats.maxTime, time);
+			eventStats.handleTime += time;
+
+			if (slowThreshold > 0 && time > slowThreshold) {
+				slowListenerCallback.onSlowListener(listener, e, time);
+				start = System.nanoTime();   // don't count the callback against the next listener
+			}
+
+			if (handled) {
+				result = true;
+				break;
+			}
+		}
+		return result;
+	}
+
+	private EventTypeStats getTypeStats(Event e) {
+		int typeId = e.typeId;
+		if (typeId >= typeStats.length) {
+			EventTypeStats[] newTypeStats = new EventTypeStats[Math.max(typeId + 1, typeStats.length * 2)];
+			System.arraycopy(typeStats, 0, newTypeStats, 0, typeStats.length);
+			typeStats = newTypeStats;
+		}
+
+		EventTypeStats stats = typeStats[typeId];
+		if (stats == null) {
+			stats = new EventTypeStats(e.getClass());
+			typeStats[typeId] = stats;
+		}
+		return stats;
+	}
+
+	// anonymous classes don't have a simple name
+	private static String getName(Class<?> type) {
+		String name = type.getSimpleName();
+		return (name.length() > 0 ? name : type.getName());
+	}
+
+	private float getRate(long count) {
+		double elapsed = eventManager.time - startTime;
+		if (elapsed <= 0.0)
+			return 0.0f;
+		else
+			return (float)(count / elapsed);
+	}
+}
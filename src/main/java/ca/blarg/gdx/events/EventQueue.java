@@ -0,0 +1,104 @@
+package ca.blarg.gdx.events;
+
+// a growable ring buffer of events. adding and removing from either end is O(1) and doesn't allocate (except when
+// the buffer needs to grow)
+
+final class EventQueue {
+	Event[] items;
+	int head;       // index of the first event
+	int size;
+	int firstSequence;   // sequence number of the first event. every event added gets the next sequence number,
+	                     // which stays the same until it is removed (or removeAll() is used)
+
+	EventQueue() {
+		items = new Event[16];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	// returns the sequence number of the added event
+	int addLast(Event e) {
+		if (size == items.length)
+			resize(items.length * 2);
+
+		items[(head + size) % items.length] = e;
+		++size;
+		return firstSequence + size - 1;
+	}
+
+	Event removeFirst() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty.");
+
+		Event e = items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		--size;
+		++firstSequence;
+		return e;
+	}
+
+	Event get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("index out of bounds: " + i);
+
+		return items[(head + i) % items.length];
+	}
+
+	// replaces the event with the given sequence number
+	void set(int sequence, Event e) {
+		int i = sequence - firstSequence;
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("sequence out of bounds: " + sequence);
+
+		items[(head + i) % items.length] = e;
+	}
+
+	/**
+	 * Removes events of the given type in a single pass over the queue, keeping the order of the remaining events.
+	 * Removed events are given to the EventManager to be freed. Returns the number of events removed.
+	 */
+	int removeAll(int typeId, boolean stopAfterFirstRemoval, EventManager eventManager) {
+		int numRemoved = 0;
+		int n = 0;
+		for (int i = 0; i < size; ++i) {
+			int from = (head + i) % items.length;
+			Event e = items[from];
+			if (e.typeId == typeId && (numRemoved == 0 || !stopAfterFirstRemoval)) {
+				eventManager.free(e);
+				++numRemoved;
+			} else {
+				if (n != i)
+					items[(head + n) % items.length] = e;
+				++n;
+			}
+		}
+
+		for (int i = n; i < size; ++i)
+			items[(head + i) % items.length] = null;
+		size = n;
+		return numRemoved;
+	}
+
+	void clear() {
+		for (int i = 0; i < size; ++i)
+			items[(head + i) % items.length] = null;
+		head = 0;
+		firstSequence += size;
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		Event[] newItems = new Event[capacity];
+		for (int i = 0; i < size; ++i)
+			newItems[i] = items[(head + i) % items.length];
+		items = newItems;
+		head = 0;
+	}
+}
@@ -0,0 +1,247 @@
+package ca.blarg.gdx.events;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records every event triggered, queued or scheduled on an EventManager (see EventManager.setRecorder()) along with
+ * each onUpdate() call, into a memory-mapped file which EventReplay can later feed back through an EventManager.
+ *
+ * Only events triggered / queued / scheduled from outside of listeners are recorded, as replaying those makes the
+ * listeners trigger / queue the rest again. Event fields are written by the EventSerializer set for the event's
+ * type; events of types without one are recorded without any of their fields.
+ *
+ * The file is grown in chunks as needed and cut down to the size actually written by dispose(). If the application
+ * exits without calling dispose(), everything recorded up to that point can still be replayed.
+ */
+public class EventRecorder implements Disposable {
+	static final int MAGIC = 0x47455652;   // "GEVR"
+	static final short VERSION = 1;
+
+	// record kinds. 0 is never written, so the unwritten (zeroed) end of the file reads as the end of the log
+	static final byte END = 0;
+	static final byte TYPE = 1;            // short type index, short name length, name (UTF-8)
+	static final byte TICK = 2;            // float delta
+	static final byte TRIGGER = 3;         // short type index, int payload length, payload
+	static final byte QUEUE = 4;           // short type index, int payload length, payload
+	static final byte SCHEDULE = 5;        // float delay, short type index, int payload length, payload
+	static final byte SCHEDULE_TICKS = 6;  // int ticks, short type index, int payload length, payload
+	static final byte ABORT = 7;           // byte stop after first removal, short type index
+	static final byte ABORT_SCHEDULED = 8; // short type index
+
+	static final class Payload extends ByteArrayOutputStream {
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	final RandomAccessFile file;
+	final FileChannel channel;
+	final int chunkSize;
+	MappedByteBuffer buffer;
+	long bufferPosition;   // position in the file that the start of buffer is mapped to
+	long size;             // only set once disposed
+
+	final ObjectIntMap<Class<? extends Event>> typeIndices;
+	final ObjectMap<Class<? extends Event>, EventSerializer<Event>> serializers;
+	final Payload payload;
+	final DataOutputStream payloadOut;
+
+	long numTicks;
+	long numEvents;
+
+	public EventRecorder(FileHandle file) {
+		this(file, 1024 * 1024);
+	}
+
+	public EventRecorder(FileHandle file, int chunkSize) {
+		if (file == null)
+			throw new IllegalArgumentException("file can not be null.");
+		if (chunkSize < 1024)
+			throw new IllegalArgumentException("chunkSize must be at least 1024.");
+
+		this.chunkSize = chunkSize;
+		typeIndices = new ObjectIntMap<Class<? extends Event>>();
+		serializers = new ObjectMap<Class<? extends Event>, EventSerializer<Event>>();
+		payload = new Payload();
+		payloadOut = new DataOutputStream(payload);
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file.file(), "rw");
+			raf.setLength(0);
+			this.file = raf;
+			channel = raf.getChannel();
+			bufferPosition = 0;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+		} catch (IOException e) {
+			StreamUtils.closeQuietly(raf);
+			throw new GdxRuntimeException("Error opening event recording: " + file, e);
+		}
+
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends Event> void setSerializer(Class<T> eventType, EventSerializer<? super T> serializer) {
+		if (serializer == null)
+			serializers.remove(eventType);
+		else
+			serializers.put(eventType, (EventSerializer<Event>)serializer);
+	}
+
+	public long getNumTicks() {
+		return numTicks;
+	}
+
+	public long getNumEvents() {
+		return numEvents;
+	}
+
+	// number of bytes recorded so far
+	public long getSize() {
+		return (buffer == null ? size : bufferPosition + buffer.position());
+	}
+
+	/*** recording (called by EventManager) ***/
+
+	void recordTick(float delta) {
+		checkNotDisposed();
+		ensureRemaining(5);
+		buffer.put(TICK);
+		buffer.putFloat(delta);
+		++numTicks;
+	}
+
+	void recordTrigger(Event e) {
+		record(TRIGGER, e, 0);
+	}
+
+	void recordQueue(Event e) {
+		record(QUEUE, e, 0);
+	}
+
+	void recordSchedule(Event e, float delay) {
+		record(SCHEDULE, e, Float.floatToRawIntBits(delay));
+	}
+
+	void recordScheduleInTicks(Event e, int ticks) {
+		record(SCHEDULE_TICKS, e, ticks);
+	}
+
+	void recordAbort(Class<? extends Event> eventType, boolean stopAfterFirstRemoval) {
+		checkNotDisposed();
+		int typeIndex = getTypeIndex(eventType);
+		ensureRemaining(4);
+		buffer.put(ABORT);
+		buffer.put((byte)(stopAfterFirstRemoval ? 1 : 0));
+		buffer.putShort((short)typeIndex);
+	}
+
+	void recordAbortScheduled(Class<? extends Event> eventType) {
+		checkNotDisposed();
+		int typeIndex = getTypeIndex(eventType);
+		ensureRemaining(3);
+		buffer.put(ABORT_SCHEDULED);
+		buffer.putShort((short)typeIndex);
+	}
+
+	private void record(byte kind, Event e, int extra) {
+		checkNotDisposed();
+		int typeIndex = getTypeIndex(e.getClass());
+
+		payload.reset();
+		EventSerializer<Event> serializer = serializers.get(e.getClass());
+		if (serializer != null) {
+			try {
+				serializer.write(e, payloadOut);
+				payloadOut.flush();
+			} catch (IOException ex) {
+				throw new GdxRuntimeException("Error writing event: " + e.getClass().getSimpleName(), ex);
+			}
+		}
+
+		int length = payload.size();
+		ensureRemaining(11 + length);
+		buffer.put(kind);
+		if (kind == SCHEDULE || kind == SCHEDULE_TICKS)
+			buffer.putInt(extra);
+		buffer.putShort((short)typeIndex);
+		buffer.putInt(length);
+		buffer.put(payload.getBuffer(), 0, length);
+		++numEvents;
+	}
+
+	private int getTypeIndex(Class<? extends Event> type) {
+		int index = typeIndices.get(type, -1);
+		if (index != -1)
+			return index;
+
+		index = typeIndices.size;
+		if (index > Short.MAX_VALUE)
+			throw new GdxRuntimeException("Too many event types recorded.");
+		typeIndices.put(type, index);
+
+		byte[] name;
+		try {
+			name = type.getName().getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new GdxRuntimeException(e);
+		}
+		ensureRemaining(5 + name.length);
+		buffer.put(TYPE);
+		buffer.putShort((short)index);
+		buffer.putShort((short)name.length);
+		buffer.put(name);
+
+		return index;
+	}
+
+	private void checkNotDisposed() {
+		if (buffer == null)
+			throw new IllegalStateException("EventRecorder has been disposed.");
+	}
+
+	private void ensureRemaining(int numBytes) {
+		if (buffer.remaining() >= numBytes)
+			return;
+
+		// map the next part of the file, starting where we are up to
+		long position = bufferPosition + buffer.position();
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(chunkSize, numBytes));
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error growing event recording.", e);
+		}
+		bufferPosition = position;
+	}
+
+	@Override
+	public void dispose() {
+		if (buffer == null)
+			return;
+
+		size = getSize();
+		buffer.force();
+		buffer = null;
+		try {
+			channel.truncate(size);
+		} catch (IOException e) {
+			// not fatal, the unwritten remainder of the file just reads as the end of the log
+		} finally {
+			StreamUtils.closeQuietly(file);
+		}
+	}
+}
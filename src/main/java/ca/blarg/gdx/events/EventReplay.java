@@ -0,0 +1,200 @@
+package ca.blarg.gdx.events;
+
+import ca.blarg.gdx.io.ByteBufferInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds events recorded by an EventRecorder back through an EventManager, one recorded onUpdate() call at a time.
+ * Each update() triggers / queues / schedules the events recorded before the next recorded onUpdate() call and
+ * then calls EventManager.onUpdate() with the recorded delta, so events are processed at the same tick boundaries
+ * as when they were recorded. The same EventSerializers that were used for recording need to be set here.
+ */
+public class EventReplay implements Disposable {
+	public final EventManager eventManager;
+
+	final RandomAccessFile file;
+	MappedByteBuffer buffer;
+	final DataInputStream in;
+
+	final Array<Class<? extends Event>> types;
+	final ObjectMap<Class<? extends Event>, EventSerializer<Event>> serializers;
+
+	long tick;
+	boolean isFinished;
+
+	public EventReplay(EventManager eventManager, FileHandle file) {
+		if (eventManager == null)
+			throw new IllegalArgumentException("eventManager can not be null.");
+		if (file == null)
+			throw new IllegalArgumentException("file can not be null.");
+
+		this.eventManager = eventManager;
+		types = new Array<Class<? extends Event>>();
+		serializers = new ObjectMap<Class<? extends Event>, EventSerializer<Event>>();
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file.file(), "r");
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new GdxRuntimeException("Event recording is too large to replay: " + file);
+			this.file = raf;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			StreamUtils.closeQuietly(raf);
+			throw new GdxRuntimeException("Error opening event recording: " + file, e);
+		}
+		in = new DataInputStream(new ByteBufferInputStream(buffer));
+
+		if (buffer.remaining() < 6 || buffer.getInt() != EventRecorder.MAGIC) {
+			dispose();
+			throw new GdxRuntimeException("Not an event recording: " + file);
+		}
+		short version = buffer.getShort();
+		if (version != EventRecorder.VERSION) {
+			dispose();
+			throw new GdxRuntimeException("Unsupported event recording version: " + version);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends Event> void setSerializer(Class<T> eventType, EventSerializer<? super T> serializer) {
+		if (serializer == null)
+			serializers.remove(eventType);
+		else
+			serializers.put(eventType, (EventSerializer<Event>)serializer);
+	}
+
+	// number of recorded onUpdate() calls replayed so far
+	public long getTick() {
+		return tick;
+	}
+
+	public boolean isFinished() {
+		return isFinished;
+	}
+
+	/**
+	 * Replays the next recorded onUpdate() call along with the events recorded before it. Returns false (without
+	 * calling onUpdate()) once the end of the recording has been reached.
+	 */
+	public boolean update() {
+		if (isFinished)
+			return false;
+
+		try {
+			while (buffer.hasRemaining()) {
+				byte kind = buffer.get();
+				switch (kind) {
+					case EventRecorder.END:
+						isFinished = true;
+						return false;
+					case EventRecorder.TYPE:
+						readTypeName();
+						break;
+					case EventRecorder.TICK:
+						float delta = buffer.getFloat();
+						eventManager.onUpdate(delta);
+						++tick;
+						return true;
+					case EventRecorder.TRIGGER:
+						eventManager.trigger(readEvent());
+						break;
+					case EventRecorder.QUEUE:
+						Event e = readEvent();
+						if (!eventManager.queue(e))
+							eventManager.free(e);
+						break;
+					case EventRecorder.SCHEDULE:
+						int delay = buffer.getInt();
+						eventManager.schedule(readEvent(), Float.intBitsToFloat(delay));
+						break;
+					case EventRecorder.SCHEDULE_TICKS:
+						int ticks = buffer.getInt();
+						eventManager.scheduleInTicks(readEvent(), ticks);
+						break;
+					case EventRecorder.ABORT:
+						boolean stopAfterFirstRemoval = (buffer.get() != 0);
+						eventManager.abort(readType(), stopAfterFirstRemoval);
+						break;
+					case EventRecorder.ABORT_SCHEDULED:
+						eventManager.abortScheduled(readType());
+						break;
+					default:
+						throw new GdxRuntimeException("Invalid event recording record kind: " + kind);
+				}
+			}
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Error reading event recording.", e);
+		}
+
+		isFinished = true;
+		return false;
+	}
+
+	// replays everything left in the recording. returns the number of onUpdate() calls replayed
+	public long updateAll() {
+		long start = tick;
+		while (update()) {
+		}
+		return tick - start;
+	}
+
+	private void readTypeName() throws IOException {
+		int index = buffer.getShort();
+		byte[] name = new byte[buffer.getShort()];
+		buffer.get(name);
+
+		String className = new String(name, "UTF-8");
+		Class<? extends Event> type;
+		try {
+			type = Class.forName(className).asSubclass(Event.class);
+		} catch (ClassNotFoundException e) {
+			throw new GdxRuntimeException("Unknown event type in event recording: " + className, e);
+		} catch (ClassCastException e) {
+			throw new GdxRuntimeException("Not an event type: " + className, e);
+		}
+
+		if (index != types.size)
+			throw new GdxRuntimeException("Invalid event recording type index: " + index);
+		types.add(type);
+	}
+
+	private Class<? extends Event> readType() {
+		int index = buffer.getShort();
+		if (index < 0 || index >= types.size)
+			throw new GdxRuntimeException("Invalid event recording type index: " + index);
+		return types.get(index);
+	}
+
+	private Event readEvent() throws IOException {
+		Class<? extends Event> type = readType();
+		int length = buffer.getInt();
+		int end = buffer.position() + length;
+
+		Event e = eventManager.create(type);
+		EventSerializer<Event> serializer = serializers.get(type);
+		if (serializer != null && length > 0)
+			serializer.read(e, in);
+		buffer.position(end);
+
+		return e;
+	}
+
+	@Override
+	public void dispose() {
+		buffer = null;
+		StreamUtils.closeQuietly(file);
+	}
+}
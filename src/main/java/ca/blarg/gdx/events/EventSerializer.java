@@ -0,0 +1,14 @@
+package ca.blarg.gdx.events;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes out and reads back the fields of one type of event, for EventRecorder and EventReplay. read() is given an
+ * event fresh from the EventManager's pool.
+ */
+public interface EventSerializer<T extends Event> {
+	void write(T e, DataOutput out) throws IOException;
+	void read(T e, DataInput in) throws IOException;
+}
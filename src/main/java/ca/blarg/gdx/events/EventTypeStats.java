@@ -0,0 +1,42 @@
+package ca.blarg.gdx.events;
+
+// counts for a single event type
+
+public final class EventTypeStats {
+	public final Class<? extends Event> type;
+	long numTriggered;
+	long numQueued;
+	long numDispatched;
+	long handleTime;   // nanoseconds
+
+	EventTypeStats(Class<? extends Event> type) {
+		this.type = type;
+	}
+
+	// events passed to trigger()
+	public long getNumTriggered() {
+		return numTriggered;
+	}
+
+	// events added to the queue (by queue() or when due after schedule() / scheduleInTicks())
+	public long getNumQueued() {
+		return numQueued;
+	}
+
+	// events that listeners were called for, whether triggered or queued
+	public long getNumDispatched() {
+		return numDispatched;
+	}
+
+	// total time spent in listeners for this event type, in nanoseconds
+	public long getHandleTime() {
+		return handleTime;
+	}
+
+	public void reset() {
+		numTriggered = 0;
+		numQueued = 0;
+		numDispatched = 0;
+		handleTime = 0;
+	}
+}
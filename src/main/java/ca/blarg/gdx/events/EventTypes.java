@@ -0,0 +1,27 @@
+package ca.blarg.gdx.events;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+// gives every Event subclass a small integer id the first time it is seen (ids are shared by all EventManagers).
+// events look theirs up once when they are created, so that EventManager can find listeners by indexing into an
+// array instead of hashing the event's class for every event
+
+final class EventTypes {
+	static final ObjectIntMap<Class<? extends Event>> ids = new ObjectIntMap<Class<? extends Event>>();
+	static final Array<Class<? extends Event>> types = new Array<Class<? extends Event>>();
+
+	static synchronized int getId(Class<? extends Event> type) {
+		int id = ids.get(type, -1);
+		if (id == -1) {
+			id = types.size;
+			ids.put(type, id);
+			types.add(type);
+		}
+		return id;
+	}
+
+	static synchronized Class<? extends Event> getType(int id) {
+		return types.get(id);
+	}
+}
@@ -0,0 +1,82 @@
+package ca.blarg.gdx.events;
+
+// the listeners for one event type, kept sorted by priority (highest first). listeners with the same priority stay
+// in the order they were added.
+//
+// copy-on-write: adding or removing a listener replaces the arrays instead of changing them, and the arrays are
+// always exactly full. dispatching just reads the listeners field once and walks that array, so it never allocates
+// or locks, and listeners added or removed while an event is being dispatched (e.g. from inside handle()) don't
+// affect that dispatch -- they only see / stop seeing events dispatched after that
+
+final class ListenerList {
+	static final EventListener[] EMPTY_LISTENERS = new EventListener[0];
+	static final int[] EMPTY_PRIORITIES = new int[0];
+
+	EventListener[] listeners;
+	int[] priorities;
+
+	ListenerList() {
+		listeners = EMPTY_LISTENERS;
+		priorities = EMPTY_PRIORITIES;
+	}
+
+	int size() {
+		return listeners.length;
+	}
+
+	int indexOf(EventListener listener) {
+		EventListener[] listeners = this.listeners;
+		for (int i = 0; i < listeners.length; ++i) {
+			if (listeners[i] == listener)
+				return i;
+		}
+		return -1;
+	}
+
+	boolean contains(EventListener listener) {
+		return indexOf(listener) != -1;
+	}
+
+	void add(EventListener listener, int priority) {
+		int size = listeners.length;
+		int index = size;
+		while (index > 0 && priorities[index - 1] < priority)
+			--index;
+
+		EventListener[] newListeners = new EventListener[size + 1];
+		int[] newPriorities = new int[size + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, index);
+		System.arraycopy(priorities, 0, newPriorities, 0, index);
+		newListeners[index] = listener;
+		newPriorities[index] = priority;
+		System.arraycopy(listeners, index, newListeners, index + 1, size - index);
+		System.arraycopy(priorities, index, newPriorities, index + 1, size - index);
+
+		priorities = newPriorities;
+		listeners = newListeners;
+	}
+
+	boolean remove(EventListener listener) {
+		int index = indexOf(listener);
+		if (index == -1)
+			return false;
+
+		int size = listeners.length - 1;
+		if (size == 0) {
+			priorities = EMPTY_PRIORITIES;
+			listeners = EMPTY_LISTENERS;
+			return true;
+		}
+
+		EventListener[] newListeners = new EventListener[size];
+		int[] newPriorities = new int[size];
+		System.arraycopy(listeners, 0, newListeners, 0, index);
+		System.arraycopy(priorities, 0, newPriorities, 0, index);
+		System.arraycopy(listeners, index + 1, newListeners, index, size - index);
+		System.arraycopy(priorities, index + 1, newPriorities, index, size - index);
+
+		priorities = newPriorities;
+		listeners = newListeners;
+		return true;
+	}
+}
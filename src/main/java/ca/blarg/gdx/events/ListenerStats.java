@@ -0,0 +1,38 @@
+package ca.blarg.gdx.events;
+
+// timings for a single EventListener, across all of the event types it listens for
+
+public final class ListenerStats {
+	public final EventListener listener;
+	long numCalls;
+	long totalTime;   // nanoseconds
+	long maxTime;     // nanoseconds
+
+	ListenerStats(EventListener listener) {
+		this.listener = listener;
+	}
+
+	public long getNumCalls() {
+		return numCalls;
+	}
+
+	// total time spent in handle(), in nanoseconds
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	// longest single handle() call, in nanoseconds
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	public float getAverageTime() {
+		return (numCalls == 0 ? 0.0f : (float)totalTime / numCalls);
+	}
+
+	public void reset() {
+		numCalls = 0;
+		totalTime = 0;
+		maxTime = 0;
+	}
+}
@@ -0,0 +1,144 @@
+package ca.blarg.gdx.events;
+
+// a binary min-heap of events ordered by the time (or tick) they are due at. events due at the same time come out
+// in the order they were added. entries are kept in parallel arrays, so adding an event doesn't allocate (except
+// when the arrays need to grow)
+
+final class ScheduledEventHeap {
+	Event[] events;
+	double[] dueAt;
+	long[] sequence;
+	int size;
+	long nextSequence;
+
+	ScheduledEventHeap() {
+		events = new Event[16];
+		dueAt = new double[16];
+		sequence = new long[16];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void add(Event e, double due) {
+		if (size == events.length)
+			resize(size * 2);
+
+		set(size, e, due, nextSequence++);
+		siftUp(size++);
+	}
+
+	double peekDueAt() {
+		if (size == 0)
+			throw new IllegalStateException("Heap is empty.");
+		return dueAt[0];
+	}
+
+	Event removeFirst() {
+		if (size == 0)
+			throw new IllegalStateException("Heap is empty.");
+
+		Event e = events[0];
+		--size;
+		set(0, events[size], dueAt[size], sequence[size]);
+		events[size] = null;
+		if (size > 0)
+			siftDown(0);
+		return e;
+	}
+
+	// removes all events of the given type and gives them to the EventManager to be freed. returns the number of
+	// events removed
+	int removeAll(int typeId, EventManager eventManager) {
+		int n = 0;
+		for (int i = 0; i < size; ++i) {
+			Event e = events[i];
+			if (e.typeId == typeId)
+				eventManager.free(e);
+			else
+				set(n++, e, dueAt[i], sequence[i]);
+		}
+		for (int i = n; i < size; ++i)
+			events[i] = null;
+
+		int numRemoved = size - n;
+		size = n;
+		if (numRemoved > 0) {
+			for (int i = size / 2 - 1; i >= 0; --i)
+				siftDown(i);
+		}
+		return numRemoved;
+	}
+
+	void clear(EventManager eventManager) {
+		for (int i = 0; i < size; ++i) {
+			eventManager.free(events[i]);
+			events[i] = null;
+		}
+		size = 0;
+	}
+
+	private boolean isBefore(int a, int b) {
+		if (dueAt[a] != dueAt[b])
+			return dueAt[a] < dueAt[b];
+		else
+			return sequence[a] < sequence[b];
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isBefore(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = i * 2 + 1;
+			if (left >= size)
+				break;
+			int right = left + 1;
+			int smallest = (right < size && isBefore(right, left)) ? right : left;
+			if (!isBefore(smallest, i))
+				break;
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void set(int i, Event e, double due, long seq) {
+		events[i] = e;
+		dueAt[i] = due;
+		sequence[i] = seq;
+	}
+
+	private void swap(int a, int b) {
+		Event e = events[a];
+		double due = dueAt[a];
+		long seq = sequence[a];
+		set(a, events[b], dueAt[b], sequence[b]);
+		set(b, e, due, seq);
+	}
+
+	private void resize(int capacity) {
+		Event[] newEvents = new Event[capacity];
+		System.arraycopy(events, 0, newEvents, 0, size);
+		events = newEvents;
+
+		double[] newDueAt = new double[capacity];
+		System.arraycopy(dueAt, 0, newDueAt, 0, size);
+		dueAt = newDueAt;
+
+		long[] newSequence = new long[capacity];
+		System.arraycopy(sequence, 0, newSequence, 0, size);
+		sequence = newSequence;
+	}
+}
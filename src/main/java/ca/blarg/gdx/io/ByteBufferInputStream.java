@@ -0,0 +1,49 @@
+package ca.blarg.gdx.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// lets stream-based readers (e.g. DataInputStream) read directly out of a ByteBuffer
+
+public class ByteBufferInputStream extends InputStream {
+	public final ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer can not be null.");
+
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining())
+			return -1;
+		else
+			return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) {
+		int count = (int)Math.min(Math.max(n, 0), buffer.remaining());
+		buffer.position(buffer.position() + count);
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
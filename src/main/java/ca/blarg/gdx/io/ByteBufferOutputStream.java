@@ -0,0 +1,28 @@
+package ca.blarg.gdx.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// lets stream-based writers (e.g. DataOutputStream) write directly into a ByteBuffer. writing past the buffer's
+// limit throws a BufferOverflowException
+
+public class ByteBufferOutputStream extends OutputStream {
+	public final ByteBuffer buffer;
+
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer can not be null.");
+
+		this.buffer = buffer;
+	}
+
+	@Override
+	public void write(int b) {
+		buffer.put((byte)b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		buffer.put(b, off, len);
+	}
+}
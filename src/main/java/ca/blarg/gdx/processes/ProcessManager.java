@@ -5,15 +5,16 @@ import ca.blarg.gdx.Strings;
 import ca.blarg.gdx.events.EventManager;
 import ca.blarg.gdx.states.GameState;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
-
-import java.util.LinkedList;
+import com.badlogic.gdx.utils.ObjectIntMap;
 
 public class ProcessManager implements Disposable {
 	public final GameState gameState;
 
-	LinkedList<ProcessInfo> processes;
-	LinkedList<ProcessInfo> queue;
+	Array<ProcessInfo> processes;
+	Array<ProcessInfo> queue;
+	ObjectIntMap<String> processIndices;   // name -> index in processes of the first process with that name
 
 	String descriptor;
 
@@ -26,14 +27,15 @@ public class ProcessManager implements Disposable {
 
 		Gdx.app.debug("ProcessManager", String.format("%s ctor", descriptor));
 
-		processes = new LinkedList<ProcessInfo>();
-		queue = new LinkedList<ProcessInfo>();
+		processes = new Array<ProcessInfo>(true, 8, ProcessInfo.class);
+		queue = new Array<ProcessInfo>(true, 4, ProcessInfo.class);
+		processIndices = new ObjectIntMap<String>();
 	}
 
 	/*** public process getters ***/
 
 	public boolean isTransitioning() {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			if (processes.get(i).isTransitioning)
 				return true;
 		}
@@ -41,7 +43,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public boolean isEmpty() {
-		return (processes.size() == 0 && queue.size() == 0);
+		return (processes.size == 0 && queue.size == 0);
 	}
 
 	public boolean isProcessTransitioning(GameProcess process) {
@@ -50,12 +52,9 @@ public class ProcessManager implements Disposable {
 	}
 
 	public boolean hasProcess(String name) {
-		for (int i = 0; i < processes.size(); ++i) {
-			ProcessInfo info = processes.get(i);
-			if (!Strings.isNullOrEmpty(info.name) && info.name.equals(name))
-				return true;
-		}
-		return false;
+		if (Strings.isNullOrEmpty(name))
+			return false;
+		return processIndices.containsKey(name);
 	}
 
 	/** Add / Remove ***/
@@ -95,7 +94,7 @@ public class ProcessManager implements Disposable {
 
 	public void removeAll() {
 		Gdx.app.debug("ProcessManager", String.format("%s Transitioning out all processes pending removal.", descriptor));
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isTransitioning && !processInfo.isInactive)
 				startTransitionOut(processInfo, true);
@@ -115,12 +114,12 @@ public class ProcessManager implements Disposable {
 	/*** events ***/
 
 	public void onPause(boolean dueToOverlay) {
-		if (processes.size() == 0)
+		if (processes.size == 0)
 			return;
 
 		if (dueToOverlay) {
 			Gdx.app.debug("ProcessManager", String.format("%s Pausing all active processes due to state being overlayed on to the parent state.", descriptor));
-			for (int i = 0; i < processes.size(); ++i) {
+			for (int i = 0; i < processes.size; ++i) {
 				ProcessInfo processInfo = processes.get(i);
 				if (!processInfo.isInactive) {
 					Gdx.app.debug("ProcessManager", String.format("%s Pausing process %s due to parent state overlay.", descriptor, processInfo));
@@ -129,7 +128,7 @@ public class ProcessManager implements Disposable {
 			}
 		} else {
 			Gdx.app.debug("ProcessManager", String.format("%s Transitioning out all active processes pending pause.", descriptor));
-			for (int i = 0; i < processes.size(); ++i) {
+			for (int i = 0; i < processes.size; ++i) {
 				ProcessInfo processInfo = processes.get(i);
 				if (!processInfo.isInactive)
 					startTransitionOut(processInfo, false);
@@ -138,12 +137,12 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onResume(boolean fromOverlay) {
-		if (processes.size() == 0)
+		if (processes.size == 0)
 			return;
 
 		if (fromOverlay) {
 			Gdx.app.debug("ProcessManager", String.format("%s Resuming all active processes due to overlay state being removed from overtop of parent state.", descriptor));
-			for (int i = 0; i < processes.size(); ++i) {
+			for (int i = 0; i < processes.size; ++i) {
 				ProcessInfo processInfo = processes.get(i);
 				if (!processInfo.isInactive) {
 					Gdx.app.debug("ProcessManager", String.format("%s Resuming process %s due to overlay state removal.", descriptor, processInfo));
@@ -152,7 +151,7 @@ public class ProcessManager implements Disposable {
 			}
 		} else {
 			Gdx.app.debug("ProcessManager", String.format("%s Resuming processes.", descriptor));
-			for (int i = 0; i < processes.size(); ++i) {
+			for (int i = 0; i < processes.size; ++i) {
 				ProcessInfo processInfo = processes.get(i);
 				if (processInfo.isInactive && !processInfo.isBeingRemoved) {
 					Gdx.app.debug("ProcessManager", String.format("%s Resuming process %s.", descriptor, processInfo));
@@ -165,7 +164,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onAppPause() {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onAppPause();
@@ -173,7 +172,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onAppResume() {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onAppResume();
@@ -181,7 +180,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onResize() {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onResize();
@@ -189,7 +188,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onRender(float interpolation) {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onRender(interpolation);
@@ -202,7 +201,7 @@ public class ProcessManager implements Disposable {
 		processQueue();
 		updateTransitions(delta);
 
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onUpdateGameState(delta);
@@ -210,7 +209,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	public void onUpdateFrame(float delta) {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive)
 				processInfo.process.onUpdateFrame(delta);
@@ -246,13 +245,16 @@ public class ProcessManager implements Disposable {
 	}
 
 	private void cleanupInactiveProcesses() {
+		boolean cleanedUpSomething = false;
+
 		int i = 0;
-		while (i < processes.size()) {
+		while (i < processes.size) {
 			ProcessInfo processInfo = processes.get(i);
 			if (processInfo.isInactive && processInfo.isBeingRemoved) {
 				// remove this process and move to the next node
 				// (index doesn't change, we're removing one, so next index now equals this index)
-				processes.remove(i);
+				processes.removeIndex(i);
+				cleanedUpSomething = true;
 
 				Gdx.app.debug("ProcessManager", String.format("%s Deleting inactive process %s.", descriptor, processInfo));
 				processInfo.process.dispose();
@@ -261,10 +263,13 @@ public class ProcessManager implements Disposable {
 				i++;
 			}
 		}
+
+		if (cleanedUpSomething)
+			updateProcessIndices();
 	}
 
 	private void checkForFinishedProcesses() {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (!processInfo.isInactive && processInfo.process.isFinished() && !processInfo.isTransitioning) {
 				Gdx.app.debug("ProcessManager", String.format("%s Process %s marked as finished.", descriptor, processInfo));
@@ -274,11 +279,12 @@ public class ProcessManager implements Disposable {
 	}
 
 	private void processQueue() {
-		while (queue.size() > 0) {
-			ProcessInfo processInfo = queue.removeFirst();
+		while (queue.size > 0) {
+			ProcessInfo processInfo = queue.removeIndex(0);
 
 			Gdx.app.debug("ProcessManager", String.format("%s Adding process %s from queue.", descriptor, processInfo));
 			processes.add(processInfo);
+			updateProcessIndices();
 			processInfo.process.onAdd();
 
 			startTransitionIn(processInfo);
@@ -286,7 +292,7 @@ public class ProcessManager implements Disposable {
 	}
 
 	private void updateTransitions(float delta) {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			ProcessInfo processInfo = processes.get(i);
 			if (processInfo.isTransitioning) {
 				boolean isDone = processInfo.process.onTransition(delta, processInfo.isTransitioningOut, processInfo.isTransitionStarting);
@@ -318,22 +324,28 @@ public class ProcessManager implements Disposable {
 		}
 	}
 
+	// processes are only added / removed in a few places, so the name lookups are worked out again whenever that
+	// happens instead of having to search through all processes for them
+	private void updateProcessIndices() {
+		processIndices.clear();
+		for (int i = 0; i < processes.size; ++i) {
+			ProcessInfo processInfo = processes.get(i);
+			if (!Strings.isNullOrEmpty(processInfo.name) && !processIndices.containsKey(processInfo.name))
+				processIndices.put(processInfo.name, i);
+		}
+	}
+
 	/*** private process getters ***/
 
 	private int getIndexOf(String processName) {
 		if (Strings.isNullOrEmpty(processName))
 			throw new IllegalArgumentException("processName should be specified.");
 
-		for (int i = 0; i < processes.size(); ++i) {
-			ProcessInfo processInfo = processes.get(i);
-			if (!Strings.isNullOrEmpty(processInfo.name) && processInfo.name.equals(processName))
-				return i;
-		}
-		return -1;
+		return processIndices.get(processName, -1);
 	}
 
 	private <T extends GameProcess> int getIndexForFirstOfType(Class<T> processType) {
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			if (processes.get(i).process.getClass() == processType)
 				return i;
 		}
@@ -344,7 +356,7 @@ public class ProcessManager implements Disposable {
 		if (process == null)
 			throw new IllegalArgumentException("process cannot be null.");
 
-		for (int i = 0; i < processes.size(); ++i) {
+		for (int i = 0; i < processes.size; ++i) {
 			if (processes.get(i).process == process)
 				return processes.get(i);
 		}
@@ -359,22 +371,23 @@ public class ProcessManager implements Disposable {
 
 		Gdx.app.debug("ProcessManager", String.format("%s dispose", descriptor));
 
-		while (processes.size() > 0) {
-			ProcessInfo processInfo = processes.getLast();
+		while (processes.size > 0) {
+			ProcessInfo processInfo = processes.peek();
 			Gdx.app.debug("ProcessManager", String.format("%s Removing process %s as part of ProcessManager shutdown.", descriptor, processInfo));
 			processInfo.process.onRemove();
 			processInfo.process.dispose();
-			processes.removeLast();
+			processes.pop();
 		}
 
 		// the queue will likely not have anything in it, but just in case ...
-		while (queue.size() > 0) {
-			ProcessInfo processInfo = processes.removeFirst();
+		while (queue.size > 0) {
+			ProcessInfo processInfo = queue.removeIndex(0);
 			Gdx.app.debug("ProcessManager", String.format("%s Removing queued process %s as part of ProcessManager shutdown.", descriptor, processInfo));
 			processInfo.process.dispose();
 		}
 
 		processes = null;
 		queue = null;
+		processIndices = null;
 	}
 }
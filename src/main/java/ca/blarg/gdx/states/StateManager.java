@@ -5,17 +5,18 @@ import ca.blarg.gdx.ReflectionUtils;
 import ca.blarg.gdx.Strings;
 import ca.blarg.gdx.events.EventManager;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
-
-import java.util.LinkedList;
+import com.badlogic.gdx.utils.ObjectIntMap;
 
 public class StateManager implements Disposable {
 	public final GameApp gameApp;
 	public final EventManager eventManager;
 
-	LinkedList<StateInfo> states;
-	LinkedList<StateInfo> pushQueue;
-	LinkedList<StateInfo> swapQueue;
+	Array<StateInfo> states;
+	Array<StateInfo> pushQueue;
+	Array<StateInfo> swapQueue;
+	ObjectIntMap<String> stateIndices;   // name -> index in states of the first state with that name
 
 	boolean pushQueueHasOverlay;
 	boolean swapQueueHasOverlay;
@@ -27,9 +28,10 @@ public class StateManager implements Disposable {
 
 		Gdx.app.debug("StateManager", "ctor");
 
-		states = new LinkedList<StateInfo>();
-		pushQueue = new LinkedList<StateInfo>();
-		swapQueue = new LinkedList<StateInfo>();
+		states = new Array<StateInfo>(true, 8, StateInfo.class);
+		pushQueue = new Array<StateInfo>(true, 4, StateInfo.class);
+		swapQueue = new Array<StateInfo>(true, 4, StateInfo.class);
+		stateIndices = new ObjectIntMap<String>();
 
 		this.gameApp = gameApp;
 		this.eventManager = eventManager;
@@ -55,7 +57,7 @@ public class StateManager implements Disposable {
 		if (info == null)
 			return null;
 
-		int index = states.indexOf(info);
+		int index = states.indexOf(info, true);
 		if (index == 0)
 			return null;
 		else
@@ -70,8 +72,8 @@ public class StateManager implements Disposable {
 		if (info == null)
 			return null;
 
-		int index = states.indexOf(info);
-		if (index == states.size() - 1)
+		int index = states.indexOf(info, true);
+		if (index == states.size - 1)
 			return null;
 		else
 			return states.get(index + 1).state;
@@ -87,7 +89,7 @@ public class StateManager implements Disposable {
 		if (info == null)
 			return null;
 
-		for (int i = states.indexOf(info); i >= 0; --i) {
+		for (int i = states.indexOf(info, true); i >= 0; --i) {
 			GameState current = states.get(i).state;
 			if (type.isInstance(current))
 				return current;
@@ -106,7 +108,7 @@ public class StateManager implements Disposable {
 		if (info == null)
 			return null;
 
-		for (int i = states.indexOf(info); i < states.size(); ++i) {
+		for (int i = states.indexOf(info, true); i < states.size; ++i) {
 			GameState current = states.get(i).state;
 			if (type.isInstance(current))
 				return current;
@@ -116,7 +118,7 @@ public class StateManager implements Disposable {
 	}
 
 	public boolean isTransitioning() {
-		for (int i = 0; i < states.size(); ++i) {
+		for (int i = 0; i < states.size; ++i) {
 			if (states.get(i).isTransitioning)
 				return true;
 		}
@@ -124,7 +126,7 @@ public class StateManager implements Disposable {
 	}
 
 	public boolean isEmpty() {
-		return (states.size() == 0 && pushQueue.size() == 0 && swapQueue.size() == 0);
+		return (states.size == 0 && pushQueue.size == 0 && swapQueue.size == 0);
 	}
 
 	public boolean isStateTransitioning(GameState state) {
@@ -144,12 +146,9 @@ public class StateManager implements Disposable {
 	}
 
 	public boolean hasState(String name) {
-		for (int i = 0; i < states.size(); ++i) {
-			StateInfo info = states.get(i);
-			if (!Strings.isNullOrEmpty(info.name) && info.name.equals(name))
-				return true;
-		}
-		return false;
+		if (Strings.isNullOrEmpty(name))
+			return false;
+		return stateIndices.containsKey(name);
 	}
 
 	/** Push / Pop / Overlay / Swap / Queue ***/
@@ -311,7 +310,7 @@ public class StateManager implements Disposable {
 	/*** events ***/
 
 	public void onAppPause() {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive)
 				stateInfo.state.onAppPause();
@@ -319,7 +318,7 @@ public class StateManager implements Disposable {
 	}
 
 	public void onAppResume() {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive)
 				stateInfo.state.onAppResume();
@@ -327,7 +326,7 @@ public class StateManager implements Disposable {
 	}
 
 	public void onResize() {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive)
 				stateInfo.state.onResize();
@@ -335,7 +334,7 @@ public class StateManager implements Disposable {
 	}
 
 	public void onRender(float interpolation) {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive) {
 				stateInfo.state.onRender(interpolation);
@@ -353,7 +352,7 @@ public class StateManager implements Disposable {
 		resumeStatesIfNeeded();
 		updateTransitions(delta);
 
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive)
 				stateInfo.state.onUpdateGameState(delta);
@@ -361,7 +360,7 @@ public class StateManager implements Disposable {
 	}
 
 	public void onUpdateFrame(float delta) {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (!stateInfo.isInactive)
 				stateInfo.state.onUpdateFrame(delta);
@@ -375,7 +374,7 @@ public class StateManager implements Disposable {
 		if (i == -1)
 			return;
 
-		for (; i < states.size(); ++i) {
+		for (; i < states.size; ++i) {
 			// only look at active states, since inactive ones have already been
 			// transitioned out and will be removed on the next onUpdate()
 			if (!states.get(i).isInactive)
@@ -393,11 +392,11 @@ public class StateManager implements Disposable {
 	}
 
 	private void startThisStateAndAboveTransitioningOut(StateInfo info, boolean pausing) {
-		int i = states.indexOf(info);
+		int i = states.indexOf(info, true);
 		if (i == -1)
 			return;
 
-		for (; i < states.size(); ++i) {
+		for (; i < states.size; ++i) {
 			// only look at active states, since inactive ones have already been
 			// transitioned out and will be removed on the next onUpdate()
 			if (!states.get(i).isInactive)
@@ -418,7 +417,7 @@ public class StateManager implements Disposable {
 		boolean cleanedUpNonOverlay = false;
 
 		int i = 0;
-		while (i < states.size()) {
+		while (i < states.size) {
 			StateInfo stateInfo = states.get(i);
 			if (stateInfo.isInactive && stateInfo.isBeingPopped) {
 				cleanedUpSomething = true;
@@ -427,7 +426,7 @@ public class StateManager implements Disposable {
 
 				// remove this state and move to the next node
 				// (index doesn't change, we're removing one, so next index now equals this index)
-				states.remove(i);
+				states.removeIndex(i);
 
 				Gdx.app.debug("StateManager", String.format("Deleting inactive popped state %s.", stateInfo));
 				stateInfo.state.dispose();
@@ -437,12 +436,14 @@ public class StateManager implements Disposable {
 			}
 		}
 
+		if (cleanedUpSomething)
+			updateStateIndices();
 		if (cleanedUpSomething && !cleanedUpNonOverlay)
 			lastCleanedStatesWereAllOverlays = true;
 	}
 
 	private void checkForFinishedStates() {
-		if (states.size() == 0)
+		if (states.size == 0)
 			return;
 
 		// don't do anything if something is currently transitioning
@@ -469,7 +470,7 @@ public class StateManager implements Disposable {
 		// overlays are, if any)
 		int i = getTopNonOverlayIndex();
 		if (i != -1) {
-			for (++i; i < states.size(); ++i) {
+			for (++i; i < states.size; ++i) {
 				StateInfo stateInfo = states.get(i);
 				if (!stateInfo.isInactive && (stateInfo.state.isFinished() || needToAlsoTransitionOutOverlays)) {
 					Gdx.app.debug("StateManager", String.format("State %s marked as finished.", stateInfo));
@@ -484,16 +485,16 @@ public class StateManager implements Disposable {
 		if (isTransitioning())
 			return;
 
-		if (pushQueue.size() > 0 && swapQueue.size() > 0)
+		if (pushQueue.size > 0 && swapQueue.size > 0)
 			throw new UnsupportedOperationException("Cannot process queues when both the swap and push queues have items currently in them.");
 
 		// for each state in the queu, add it to the main list and start transitioning it in
 		// (note, only one of these queues will be processed each tick due to the above check!)
 
-		while (pushQueue.size() > 0) {
-			StateInfo stateInfo = pushQueue.removeFirst();
+		while (pushQueue.size > 0) {
+			StateInfo stateInfo = pushQueue.removeIndex(0);
 
-			if (states.size() > 0) {
+			if (states.size > 0) {
 				// if this new state is an overlay, and the current top state is both
 				// currently active and is not currently marked as being overlay-ed
 				// then we should pause it due to overlay
@@ -507,7 +508,8 @@ public class StateManager implements Disposable {
 				}
 			}
 
-			states.addLast(stateInfo);
+			states.add(stateInfo);
+			updateStateIndices();
 
 			Gdx.app.debug("StateManager", String.format("Pushing %sstate %s from push-queue.", (stateInfo.isOverlay ? "overlay " : ""), stateInfo));
 			stateInfo.state.onPush();
@@ -515,8 +517,8 @@ public class StateManager implements Disposable {
 			transitionIn(stateInfo, false);
 		}
 
-		while (swapQueue.size() > 0) {
-			StateInfo stateInfo = swapQueue.removeFirst();
+		while (swapQueue.size > 0) {
+			StateInfo stateInfo = swapQueue.removeIndex(0);
 
 			// if this new state is an overlay, and the current top state is both
 			// currently active and is not currently marked as being overlay-ed
@@ -530,7 +532,8 @@ public class StateManager implements Disposable {
 				currentTopStateInfo.isOverlayed = true;
 			}
 
-			states.addLast(stateInfo);
+			states.add(stateInfo);
+			updateStateIndices();
 
 			Gdx.app.debug("StateManager", String.format("Pushing %sstate %s from swap-queue.", (stateInfo.isOverlay ? "overlay " : ""), stateInfo));
 			stateInfo.state.onPush();
@@ -543,7 +546,7 @@ public class StateManager implements Disposable {
 	}
 
 	private void resumeStatesIfNeeded() {
-		if (states.size() == 0)
+		if (states.size == 0)
 			return;
 
 		// don't do anything if stuff is currently transitioning
@@ -575,7 +578,7 @@ public class StateManager implements Disposable {
 		// top state is inactive. time to reusme one or more states...
 		// find the topmost non-overlay state and take it and all overlay states that
 		// are above it, and transition them in
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			Gdx.app.debug("StateManager", String.format("Resuming %sstate %s.", (stateInfo.isOverlay ? "overlay " : ""), stateInfo));
 			stateInfo.state.onResume(false);
@@ -585,7 +588,7 @@ public class StateManager implements Disposable {
 	}
 
 	private void updateTransitions(float delta) {
-		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size(); ++i) {
+		for (int i = getTopNonOverlayIndex(); i != -1 && i < states.size; ++i) {
 			StateInfo stateInfo = states.get(i);
 			if (stateInfo.isTransitioning) {
 				boolean isDone = stateInfo.state.onTransition(delta, stateInfo.isTransitioningOut, stateInfo.isTransitionStarting);
@@ -644,13 +647,24 @@ public class StateManager implements Disposable {
 		//	stateInfo.getState().getProcessManager().onPause(false);
 	}
 
+	// states are only added / removed in a few places, so the name lookups are worked out again whenever that happens
+	// instead of having to search through all states for them
+	private void updateStateIndices() {
+		stateIndices.clear();
+		for (int i = 0; i < states.size; ++i) {
+			StateInfo stateInfo = states.get(i);
+			if (!Strings.isNullOrEmpty(stateInfo.name) && !stateIndices.containsKey(stateInfo.name))
+				stateIndices.put(stateInfo.name, i);
+		}
+	}
+
 	/*** private state getters ***/
 
 	private StateInfo getStateInfoFor(GameState state) {
 		if (state == null)
 			throw new IllegalArgumentException("state cannot be null.");
 
-		for (int i = 0; i < states.size(); ++i) {
+		for (int i = 0; i < states.size; ++i) {
 			if (states.get(i).state == state)
 				return states.get(i);
 		}
@@ -658,7 +672,7 @@ public class StateManager implements Disposable {
 	}
 
 	private StateInfo getTop() {
-		return (states.isEmpty() ? null : states.getLast());
+		return (states.size == 0 ? null : states.peek());
 	}
 
 	private StateInfo getTopNonOverlay() {
@@ -667,11 +681,11 @@ public class StateManager implements Disposable {
 	}
 
 	private int getTopNonOverlayIndex() {
-		for (int i = states.size() - 1; i >= 0; i--) {
+		for (int i = states.size - 1; i >= 0; i--) {
 			if (!states.get(i).isOverlay)
 				return i;
 		}
-		return (states.size() > 0 ? 0 : -1);
+		return (states.size > 0 ? 0 : -1);
 	}
 
 	/*** cleanup ***/
@@ -682,22 +696,22 @@ public class StateManager implements Disposable {
 
 		Gdx.app.debug("StateManager", "dispose");
 
-		while (states.size() > 0) {
-			StateInfo stateInfo = states.getLast();
+		while (states.size > 0) {
+			StateInfo stateInfo = states.peek();
 			Gdx.app.debug("StateManager", String.format("Popping state %s as part of StateManager shutdown.", stateInfo));
 			stateInfo.state.onPop();
 			stateInfo.state.dispose();
-			states.removeLast();
+			states.pop();
 		}
 
 		// these queues will likely not have anything in them, but just in case ...
-		while (pushQueue.size() > 0) {
-			StateInfo stateInfo = pushQueue.removeFirst();
+		while (pushQueue.size > 0) {
+			StateInfo stateInfo = pushQueue.removeIndex(0);
 			Gdx.app.debug("StateManager", String.format("Deleting push-queued state %s as part of StateManager shutdown.", stateInfo));
 			stateInfo.state.dispose();
 		}
-		while (swapQueue.size() > 0) {
-			StateInfo stateInfo = swapQueue.removeFirst();
+		while (swapQueue.size > 0) {
+			StateInfo stateInfo = swapQueue.removeIndex(0);
 			Gdx.app.debug("StateManager", String.format("Deleting swap-queued state %s as part of StateManager shutdown.", stateInfo));
 			stateInfo.state.dispose();
 		}
@@ -705,5 +719,6 @@ public class StateManager implements Disposable {
 		states = null;
 		pushQueue = null;
 		swapQueue = null;
+		stateIndices = null;
 	}
 }